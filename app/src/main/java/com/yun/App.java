@@ -3,6 +3,7 @@ package com.yun;
 import android.app.Application;
 
 import com.yun.baselibrary.utils.MMKVUtils;
+import com.yun.baselibrary.utils.Preference;
 
 /**
  * @Author: HOU
@@ -13,6 +14,7 @@ public class App extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        MMKVUtils.init(this,"yun");
+        MMKVUtils.init(this, "yun", MMKVUtils.DEFAULT_FILE_NAME);
+        Preference.useMMKV();
     }
 }
@@ -10,6 +10,11 @@ import com.blankj.utilcode.util.StringUtils
 import com.yun.baselibrary.been.BaseResponse
 import com.yun.baselibrary.http.AppException
 import com.yun.baselibrary.http.ExceptionHandle
+import com.yun.baselibrary.http.RequestScheduler
+import com.yun.baselibrary.http.RetryPolicy
+import com.yun.baselibrary.http.SingleFlight
+import com.yun.baselibrary.http.cache.CachePolicy
+import com.yun.baselibrary.http.cache.ResponseCache
 import com.yun.baselibrary.http.common.ResultState
 import com.yun.baselibrary.http.common.paresException
 import com.yun.baselibrary.http.common.paresResult
@@ -31,25 +36,38 @@ open abstract class BaseViewModel : ViewModel(), LifecycleObserver {
         errorData: Boolean = false,
         success: ((info: BaseResponse<T>) -> Unit) = {},
         error: ((info: AppException) -> Unit) = {},
-        loading:(()->Unit) = {}) {
+        loading:(()->Unit) = {},
+        cache: CachePolicy? = null,
+        coalesceKey: String? = null,
+        retry: RetryPolicy? = null,
+        priority: RequestScheduler.Priority? = null,
+        host: String? = null) {
         viewModelScope.launch {
+            val cached = loadCache(cache)
+            if (cached != null) {
+                success.invoke(cached.response())
+                if (cache!!.isFresh(cached)) return@launch
+            }
             var dialog: LoadingDialog? = null
             runCatching {
-                loading.invoke()
-                if (showDialog) {
-                    dialog = LoadingDialog()
-                    val activity = ActivityUtils.getTopActivity() as FragmentActivity
-                    dialog?.let {
-                        activity.supportFragmentManager.beginTransaction().add(it, "loading").commitAllowingStateLoss()
+                if (cached == null) {
+                    loading.invoke()
+                    if (showDialog) {
+                        dialog = LoadingDialog()
+                        val activity = ActivityUtils.getTopActivity() as FragmentActivity
+                        dialog?.let {
+                            activity.supportFragmentManager.beginTransaction().add(it, "loading").commitAllowingStateLoss()
+                        }
                     }
                 }
-                withContext(Dispatchers.IO) { block() }
+                fetch(block, cache, coalesceKey, retry, priority, host)
             }.onSuccess {
                 dialog?.dismissAllowingStateLoss()
                 codeInterceptor(it.code)
                 if (it.code == 0) {
                     success.invoke(it)
-                } else {
+                } else if (cached == null) {
+                    //已经展示了缓存时，后台刷新的业务错误同样不提示
                     if (errorToast && !StringUtils.isEmpty(it.msg)) {
                         showToast(it.msg)
                     }
@@ -57,13 +75,15 @@ open abstract class BaseViewModel : ViewModel(), LifecycleObserver {
                         AppException(
                             it.code,
                             it.msg,
-                            if (errorData) it.data.toString() else ""
+                            if (errorData) (it.errorData ?: it.data).toString() else ""
                         )
                     )
                 }
             }.onFailure {
                 logD("错误信息----${it.message.toString()}")
                 dialog?.dismissAllowingStateLoss()
+                //已经展示了缓存，后台刷新失败不打扰用户
+                if (cached != null) return@onFailure
                 val onFail = ExceptionHandle.handleException(it)
                 if (!it.message.toString().contains("Job was cancelled"))
                     showToast("${onFail.message.toString()}")
@@ -77,41 +97,93 @@ open abstract class BaseViewModel : ViewModel(), LifecycleObserver {
         showDialog:Boolean = false,
         errorToast:Boolean = true,
         errorData:Boolean = false,
+        cache: CachePolicy? = null,
+        coalesceKey: String? = null,
+        retry: RetryPolicy? = null,
+        priority: RequestScheduler.Priority? = null,
+        host: String? = null,
         block: suspend () -> BaseResponse<T>
     ) {
         viewModelScope.launch {
+            val cached = loadCache(cache)
+            if (cached != null) {
+                resultState.paresResult(cached.response<T>())
+                if (cache!!.isFresh(cached)) return@launch
+            }
             var dialog: LoadingDialog? = null
             runCatching {
-                resultState.value = ResultState.Loading
-                if (showDialog) {
-                    dialog = LoadingDialog()
-                    val activity = ScreenManager.currentActivity() as FragmentActivity
-                    dialog?.let {
-                        activity.supportFragmentManager.beginTransaction().add(it, "loading").commitAllowingStateLoss()
+                if (cached == null) {
+                    resultState.value = ResultState.Loading
+                    if (showDialog) {
+                        dialog = LoadingDialog()
+                        val activity = ScreenManager.currentActivity() as FragmentActivity
+                        dialog?.let {
+                            activity.supportFragmentManager.beginTransaction().add(it, "loading").commitAllowingStateLoss()
+                        }
                     }
                 }
-                withContext(Dispatchers.IO) { block() }
+                fetch(block, cache, coalesceKey, retry, priority, host)
             }.onSuccess {
                 dialog?.dismissAllowingStateLoss()
                 codeInterceptor(it.code)
                 if (it.code == 0) {
                     resultState.paresResult(it)
-                } else {
+                } else if (cached == null) {
                     resultState.paresException(
                         AppException(
                             it.code,
                             it.msg,
-                            if (errorData) it.data.toString() else ""
+                            if (errorData) (it.errorData ?: it.data).toString() else ""
                         ), errorToast)
                 }
 
             }.onFailure {
                 logD("错误信息----${it.message.toString()}")
                 dialog?.dismissAllowingStateLoss()
+                if (cached != null) return@onFailure
                 resultState.paresException(it)
             }
         }
     }
+
+    /**
+     * 读取可以先展示的缓存，没有开启缓存或缓存不可用时返回null
+     */
+    private suspend fun loadCache(cache: CachePolicy?): ResponseCache.Entry? {
+        cache ?: return null
+        val entry = withContext(Dispatchers.IO) { ResponseCache.get(cache) } ?: return null
+        return if (cache.isUsable(entry)) entry else null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <T> ResponseCache.Entry.response(): BaseResponse<T> = response as BaseResponse<T>
+
+    /**
+     * 在IO线程请求，成功的结果写入缓存
+     * @param coalesceKey 不为空时，相同key的并发请求只发一次，见 [SingleFlight]
+     * @param retry 网络异常时的重试策略，合并的请求只重试一份
+     * @param priority 排队优先级，为空时不排队直接请求；每次重试单独排队，等待重试期间不占并发，见 [RequestScheduler]
+     * @param host 排队时按host限制并发，为空时只受总并发限制。block 里调用的接口不同 baseUrl 时需要传入
+     */
+    private suspend fun <T> fetch(
+        block: suspend () -> BaseResponse<T>,
+        cache: CachePolicy?,
+        coalesceKey: String?,
+        retry: RetryPolicy?,
+        priority: RequestScheduler.Priority?,
+        host: String?
+    ): BaseResponse<T> {
+        val attempt: suspend () -> BaseResponse<T> =
+            if (priority == null) block else { { RequestScheduler.execute(host, priority, block) } }
+        val call: suspend () -> BaseResponse<T> = {
+            withContext(Dispatchers.IO) {
+                (if (retry == null) attempt() else retry.execute(attempt)).also {
+                    if (cache != null && it.code == 0) ResponseCache.put(cache, it)
+                }
+            }
+        }
+        return if (coalesceKey == null) call() else SingleFlight.execute(coalesceKey, call)
+    }
 }
 
 
@@ -1,7 +1,15 @@
 package com.yun.baselibrary.been
 
+import com.google.gson.JsonElement
+
 data class BaseResponse<T>(
     var code: Int,
     var msg: String,
     var data: T
-)
\ No newline at end of file
+) {
+    /**
+     * code 不是成功码时 data 不会解析成 T，原始内容保存在这里，见 BaseResponseConverterFactory
+     */
+    @Transient
+    var errorData: JsonElement? = null
+}
\ No newline at end of file
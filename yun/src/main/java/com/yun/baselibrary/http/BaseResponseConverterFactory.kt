@@ -0,0 +1,94 @@
+package com.yun.baselibrary.http
+
+import com.google.gson.Gson
+import com.google.gson.JsonElement
+import com.google.gson.JsonIOException
+import com.google.gson.JsonParseException
+import com.google.gson.TypeAdapter
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonToken
+import com.yun.baselibrary.been.BaseResponse
+import okhttp3.ResponseBody
+import retrofit2.Converter
+import retrofit2.Retrofit
+import java.lang.reflect.ParameterizedType
+import java.lang.reflect.Type
+
+/**
+ * BaseResponse<T> 的流式解析，先读 code，code 不是成功码时 data 不再解析成对象，只保留原始json
+ * 到 [BaseResponse.errorData]；成功时直接从 JsonReader 解析 data，data 的 TypeAdapter 在创建 converter 时就取好
+ *
+ * 需要放在 GsonConverterFactory 前面，非 BaseResponse 的返回类型交给后面的 factory
+ */
+class BaseResponseConverterFactory private constructor(
+    private val gson: Gson,
+    private val successCode: Int
+) : Converter.Factory() {
+
+    companion object {
+        @JvmStatic
+        @JvmOverloads
+        fun create(gson: Gson = Gson(), successCode: Int = 0): BaseResponseConverterFactory {
+            return BaseResponseConverterFactory(gson, successCode)
+        }
+    }
+
+    override fun responseBodyConverter(
+        type: Type,
+        annotations: Array<Annotation>,
+        retrofit: Retrofit
+    ): Converter<ResponseBody, *>? {
+        if (getRawType(type) != BaseResponse::class.java) return null
+        val dataType = if (type is ParameterizedType) getParameterUpperBound(0, type) else Any::class.java
+        return EnvelopeConverter(gson, gson.getAdapter(TypeToken.get(dataType)), successCode)
+    }
+
+    private class EnvelopeConverter<T>(
+        private val gson: Gson,
+        private val dataAdapter: TypeAdapter<T>,
+        private val successCode: Int
+    ) : Converter<ResponseBody, BaseResponse<T?>> {
+
+        override fun convert(value: ResponseBody): BaseResponse<T?> {
+            value.use {
+                val reader = gson.newJsonReader(value.charStream())
+                var code: Int? = null
+                var msg: String? = null
+                var data: T? = null
+                //data 出现在 code 前面或 code 不是成功码时存成树
+                var rawData: JsonElement? = null
+
+                reader.beginObject()
+                while (reader.hasNext()) {
+                    when (reader.nextName()) {
+                        "code" -> code = reader.nextInt()
+                        "msg" -> msg = if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull()
+                            null
+                        } else {
+                            reader.nextString()
+                        }
+                        "data" -> if (code == successCode) {
+                            data = dataAdapter.read(reader)
+                        } else {
+                            rawData = gson.getAdapter(JsonElement::class.java).read(reader)
+                        }
+                        else -> reader.skipValue()
+                    }
+                }
+                reader.endObject()
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw JsonIOException("JSON document was not fully consumed.")
+                }
+
+                //没有 code 的返回无法判断成功与否，按解析失败处理
+                val resultCode = code ?: throw JsonParseException("BaseResponse has no code")
+                if (rawData != null && resultCode == successCode) {
+                    data = dataAdapter.fromJsonTree(rawData)
+                    rawData = null
+                }
+                return BaseResponse(resultCode, msg ?: "", data).also { it.errorData = rawData }
+            }
+        }
+    }
+}
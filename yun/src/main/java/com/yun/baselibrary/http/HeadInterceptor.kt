@@ -1,29 +1,89 @@
 package com.yun.baselibrary.http
 
+import okhttp3.Headers
 import okhttp3.Interceptor
 import okhttp3.Response
 import java.io.IOException
 import java.net.URLEncoder
+import java.util.concurrent.atomic.AtomicReference
 
 /**
  * 头部参数拦截器，传入heads
+ *
+ * 头部在 [publish]/[putHeader]/[removeHeader] 时编码成不可变的 Headers 并整体替换，
+ * 每次请求只读一次快照，token 变化不需要重建 client
  */
-class HeadInterceptor(private val headers: Map<String, String>? = null) :
+class HeadInterceptor(headers: Map<String, String>? = null) :
     Interceptor {
+
+    private class Snapshot(
+        val version: Long,
+        val source: Map<String, String>,
+        val headers: Headers
+    )
+
+    private val snapshot = AtomicReference(encode(0, headers))
+
+    /**
+     * 当前头部的版本号，每次更新加一
+     */
+    val version: Long
+        get() = snapshot.get().version
+
+    /**
+     * 当前生效的头部（编码前）
+     */
+    val headers: Map<String, String>
+        get() = snapshot.get().source
+
+    /**
+     * 整体替换头部
+     */
+    fun publish(headers: Map<String, String>?) {
+        update { headers ?: emptyMap() }
+    }
+
+    /**
+     * 新增或修改单个头部，如登录后更新token
+     */
+    fun putHeader(name: String, value: String) {
+        update { it + (name to value) }
+    }
+
+    fun removeHeader(name: String) {
+        update { it - name }
+    }
+
+    private fun update(transform: (Map<String, String>) -> Map<String, String>) {
+        while (true) {
+            val current = snapshot.get()
+            val next = encode(current.version + 1, transform(current.source))
+            if (snapshot.compareAndSet(current, next)) return
+        }
+    }
+
     @Throws(IOException::class)
     override fun intercept(chain: Interceptor.Chain): Response {
-        val builder = chain.request()
-            .newBuilder()
-        if (headers != null && headers.isNotEmpty()) {
-            val keys = headers.keys
-            for (headerKey in keys) {
-                headers[headerKey]?.let {
-                    builder.addHeader(headerKey, URLEncoder.encode(it,"UTF-8")).build()
-                }
-            }
+        val extra = snapshot.get().headers
+        val request = chain.request()
+        if (extra.size() == 0) {
+            return chain.proceed(request)
         }
         //请求信息
-        return chain.proceed(builder.build())
+        return chain.proceed(
+            request.newBuilder()
+                .headers(request.headers().newBuilder().addAll(extra).build())
+                .build()
+        )
+    }
+
+    private fun encode(version: Long, headers: Map<String, String>?): Snapshot {
+        val source = if (headers.isNullOrEmpty()) emptyMap() else LinkedHashMap(headers)
+        val builder = Headers.Builder()
+        for ((key, value) in source) {
+            builder.add(key, URLEncoder.encode(value, "UTF-8"))
+        }
+        return Snapshot(version, source, builder.build())
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package com.yun.baselibrary.http
+
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.OkHttpClient
+import retrofit2.Retrofit
+import retrofit2.converter.gson.GsonConverterFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * 全局共享的 OkHttpClient / Retrofit，所有 baseUrl 共用一个连接池、线程池和 TLS 会话缓存，
+ * 不同 baseUrl 的 Retrofit 通过 newBuilder() 派生，创建过的接口代理也会缓存
+ *
+ * 在 Application 里调用 [init]，之后通过 [create] 拿接口
+ */
+object HttpClientProvider {
+    private const val CONNECT_TIMEOUT_SECONDS = 15L
+    private const val READ_TIMEOUT_SECONDS = 20L
+    private const val WRITE_TIMEOUT_SECONDS = 20L
+
+    /** 空闲连接数，覆盖常用的几个域名即可 */
+    private const val MAX_IDLE_CONNECTIONS = 8
+    private const val KEEP_ALIVE_MINUTES = 5L
+
+    private const val MAX_REQUESTS = 64
+    private const val MAX_REQUESTS_PER_HOST = 8
+
+    private var debug = false
+    private var customizer: (OkHttpClient.Builder.() -> Unit)? = null
+
+    /**
+     * 共享 client 上的公共头部，登录后可直接 putHeader 更新 token，不需要重建 client
+     */
+    val headInterceptor = HeadInterceptor()
+
+    @Volatile
+    private var sharedClient: OkHttpClient? = null
+
+    private val retrofits = ConcurrentHashMap<String, Retrofit>()
+    private val services = ConcurrentHashMap<String, Any>()
+
+    /**
+     * 需要在第一次请求前调用
+     * @param headers 公共请求头，交给 [HeadInterceptor]
+     * @param debug 是否打印请求日志
+     * @param customizer 对共享 client 的额外配置，如 cookieJar、证书等
+     */
+    @Synchronized
+    fun init(
+        headers: Map<String, String>? = null,
+        debug: Boolean = false,
+        customizer: (OkHttpClient.Builder.() -> Unit)? = null
+    ) {
+        check(sharedClient == null) { "HttpClientProvider 已经创建了 client，init 需要在第一次请求前调用" }
+        headInterceptor.publish(headers)
+        this.debug = debug
+        this.customizer = customizer
+    }
+
+    /**
+     * 共享的 client，需要单独配置时用 client.newBuilder()，这样仍然共用连接池和线程池
+     */
+    val client: OkHttpClient
+        get() = sharedClient ?: synchronized(this) {
+            sharedClient ?: buildClient().also { sharedClient = it }
+        }
+
+    /**
+     * @param baseUrl 以 / 结尾
+     * @param customizer 只对这个 baseUrl 生效的配置，第一次创建时使用
+     */
+    fun retrofit(baseUrl: String, customizer: (OkHttpClient.Builder.() -> Unit)? = null): Retrofit {
+        retrofits[baseUrl]?.let { return it }
+        val callFactory = if (customizer == null) client else client.newBuilder().apply(customizer).build()
+        val retrofit = Retrofit.Builder()
+            .baseUrl(baseUrl)
+            .client(callFactory)
+            .addConverterFactory(BaseResponseConverterFactory.create())
+            .addConverterFactory(GsonConverterFactory.create())
+            .build()
+        return retrofits.putIfAbsent(baseUrl, retrofit) ?: retrofit
+    }
+
+    /**
+     * 获取接口代理，同一个 baseUrl + 接口只创建一次
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun <T> create(baseUrl: String, service: Class<T>): T {
+        val key = baseUrl + '#' + service.name
+        services[key]?.let { return it as T }
+        val created = retrofit(baseUrl).create(service) as Any
+        return (services.putIfAbsent(key, created) ?: created) as T
+    }
+
+    inline fun <reified T> create(baseUrl: String): T = create(baseUrl, T::class.java)
+
+    private fun buildClient(): OkHttpClient {
+        val dispatcher = Dispatcher().apply {
+            maxRequests = MAX_REQUESTS
+            maxRequestsPerHost = MAX_REQUESTS_PER_HOST
+        }
+        val builder = OkHttpClient.Builder()
+            .connectionPool(ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .dispatcher(dispatcher)
+            .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .retryOnConnectionFailure(true)
+            .eventListenerFactory(HttpMetrics.eventListenerFactory)
+            .addInterceptor(headInterceptor)
+        if (debug) {
+            builder.addInterceptor(
+                HttpLoggingInterceptor2()
+                    .setLevel(HttpLoggingInterceptor2.Level.BODY)
+                    .setAsync(true)
+            )
+        }
+        customizer?.invoke(builder)
+        return builder.build()
+    }
+}
@@ -0,0 +1,167 @@
+package com.yun.baselibrary.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志分发，请求线程只把 {@link HttpLogRecord} 放进有界无锁环形队列，
+ * 由单个后台线程格式化并输出，队列满时直接丢弃并计数，不阻塞请求线程
+ */
+public final class HttpLogDispatcher {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static volatile HttpLogDispatcher sDefault;
+
+    private final int mask;
+    private final AtomicReferenceArray<HttpLogRecord> records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    /** 只有消费线程读写 */
+    private long dequeuePos;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped;
+
+    private volatile Thread consumer;
+    private volatile boolean idle;
+
+    /**
+     * @param capacity 队列容量，向上取整为2的幂
+     */
+    public HttpLogDispatcher(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity <= 0");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        mask = size - 1;
+        records = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 全局共享的分发器
+     */
+    public static HttpLogDispatcher getDefault() {
+        if (sDefault == null) {
+            synchronized (HttpLogDispatcher.class) {
+                if (sDefault == null) {
+                    sDefault = new HttpLogDispatcher(DEFAULT_CAPACITY);
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * 因队列已满被丢弃的日志条数
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    boolean dispatch(HttpLogRecord record) {
+        ensureStarted();
+        if (!offer(record)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (idle) {
+            idle = false;
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    private boolean offer(HttpLogRecord record) {
+        long pos;
+        int index;
+        for (; ; ) {
+            pos = enqueuePos.get();
+            index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) break;
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+        records.lazySet(index, record);
+        // 用 volatile 写发布，保证之后对 idle 的读取不会排到它前面，否则消费线程可能刚要 park 时错过唤醒
+        sequences.set(index, pos + 1);
+        return true;
+    }
+
+    private HttpLogRecord poll() {
+        long pos = dequeuePos;
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        HttpLogRecord record = records.get(index);
+        records.lazySet(index, null);
+        sequences.lazySet(index, pos + mask + 1);
+        dequeuePos = pos + 1;
+        return record;
+    }
+
+    private void ensureStarted() {
+        if (consumer != null) return;
+        synchronized (this) {
+            if (consumer != null) return;
+            Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    drainLoop();
+                }
+            }, "HttpLogDispatcher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            consumer = thread;
+            thread.start();
+        }
+    }
+
+    private void drainLoop() {
+        for (; ; ) {
+            HttpLogRecord record = poll();
+            if (record == null) {
+                reportDropped();
+                idle = true;
+                // 再查一次，避免和生产者的唤醒错过
+                record = poll();
+                if (record == null) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                idle = false;
+            }
+            try {
+                HttpLoggingInterceptor2.emit(record);
+            } catch (Throwable t) {
+                reportFailure(t);
+            }
+        }
+    }
+
+    private static void reportFailure(Throwable t) {
+        try {
+            com.orhanobut.logger.Logger.e(t, "HttpLogDispatcher emit failed");
+        } catch (Throwable ignored) {
+            // 日志库本身出错时放弃，不能让消费线程退出
+        }
+    }
+
+    private void reportDropped() {
+        long total = dropped.get();
+        if (total != reportedDropped) {
+            com.orhanobut.logger.Logger.w("HttpLogDispatcher dropped " + (total - reportedDropped)
+                    + " records (" + total + " total)");
+            reportedDropped = total;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.yun.baselibrary.http;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okio.ByteString;
+
+/**
+ * 一次请求/响应日志的不可变快照，拦截器只负责采集，格式化和输出交给 {@link HttpLoggingInterceptor2#format}
+ */
+final class HttpLogRecord {
+    static final int TYPE_REQUEST = 0;
+    static final int TYPE_RESPONSE = 1;
+    static final int TYPE_FAILED = 2;
+    /** 请求日志之后单独输出的请求体 */
+    static final int TYPE_REQUEST_BODY = 3;
+
+    /** 没有body或不需要打印body */
+    static final int BODY_NONE = 0;
+    /** 未知编码，body省略 */
+    static final int BODY_ENCODED = 1;
+    /** 明文或二进制body，内容在 {@link #body} 中 */
+    static final int BODY_CAPTURED = 2;
+    /** body写出时截取，写完后以 {@link #TYPE_REQUEST_BODY} 单独输出 */
+    static final int BODY_STREAMED = 3;
+
+    final int type;
+    final boolean logHeaders;
+    final boolean logBody;
+
+    final String method;
+    final HttpUrl url;
+    final String protocol;
+
+    final int code;
+    final String message;
+    final long tookMs;
+    final Throwable failure;
+
+    final Headers headers;
+    final MediaType contentType;
+    final long contentLength;
+    final boolean hasBody;
+
+    final int bodyState;
+    final boolean gzip;
+    /** 截取到的body前缀，最多 {@link HttpLoggingInterceptor2#setMaxBodyCapture} 字节 */
+    final ByteString body;
+    /** body字节数，响应体没有读完时取 Content-Length */
+    final long bodyBytes;
+    /** body是否只截取了一部分 */
+    final boolean truncated;
+
+    private HttpLogRecord(int type, boolean logHeaders, boolean logBody, String method, HttpUrl url,
+                          String protocol, int code, String message, long tookMs, Throwable failure,
+                          Headers headers, MediaType contentType, long contentLength, boolean hasBody,
+                          int bodyState, boolean gzip, ByteString body, long bodyBytes,
+                          boolean truncated) {
+        this.type = type;
+        this.logHeaders = logHeaders;
+        this.logBody = logBody;
+        this.method = method;
+        this.url = url;
+        this.protocol = protocol;
+        this.code = code;
+        this.message = message;
+        this.tookMs = tookMs;
+        this.failure = failure;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.hasBody = hasBody;
+        this.bodyState = bodyState;
+        this.gzip = gzip;
+        this.body = body;
+        this.bodyBytes = bodyBytes;
+        this.truncated = truncated;
+    }
+
+    static HttpLogRecord request(boolean logHeaders, boolean logBody, String method, HttpUrl url,
+                                 String protocol, Headers headers, MediaType contentType,
+                                 long contentLength, boolean hasBody, int bodyState, ByteString body,
+                                 long bodyBytes, boolean truncated) {
+        return new HttpLogRecord(TYPE_REQUEST, logHeaders, logBody, method, url, protocol,
+                0, null, 0, null, headers, contentType, contentLength, hasBody, bodyState, false,
+                body, bodyBytes, truncated);
+    }
+
+    static HttpLogRecord requestBody(String method, HttpUrl url, MediaType contentType,
+                                     ByteString body, long bodyBytes, boolean truncated) {
+        return new HttpLogRecord(TYPE_REQUEST_BODY, true, true, method, url, null, 0, null, 0,
+                null, null, contentType, bodyBytes, true, BODY_CAPTURED, false, body, bodyBytes,
+                truncated);
+    }
+
+    static HttpLogRecord response(boolean logHeaders, boolean logBody, HttpUrl url, int code,
+                                  String message, long tookMs, Headers headers,
+                                  MediaType contentType, long contentLength, boolean hasBody,
+                                  int bodyState, boolean gzip, ByteString body, long bodyBytes,
+                                  boolean truncated) {
+        return new HttpLogRecord(TYPE_RESPONSE, logHeaders, logBody, null, url, null, code, message,
+                tookMs, null, headers, contentType, contentLength, hasBody, bodyState, gzip, body,
+                bodyBytes, truncated);
+    }
+
+    static HttpLogRecord failed(Throwable failure) {
+        return new HttpLogRecord(TYPE_FAILED, false, false, null, null, null, 0, null, 0, failure,
+                null, null, -1, false, BODY_NONE, false, null, 0, false);
+    }
+}
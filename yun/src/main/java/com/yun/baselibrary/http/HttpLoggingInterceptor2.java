@@ -17,8 +17,14 @@ import okhttp3.ResponseBody;
 import okhttp3.internal.http.HttpHeaders;
 import okhttp3.internal.platform.Platform;
 import okio.Buffer;
+import okio.BufferedSink;
 import okio.BufferedSource;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
 import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
 
 import static okhttp3.internal.platform.Platform.INFO;
 
@@ -31,6 +37,7 @@ import static okhttp3.internal.platform.Platform.INFO;
  */
 public final class HttpLoggingInterceptor2 implements Interceptor {
   private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final long DEFAULT_MAX_BODY_CAPTURE = 64 * 1024;
 
   public enum Level {
     /** No logs. */
@@ -111,6 +118,10 @@ public final class HttpLoggingInterceptor2 implements Interceptor {
 
   private volatile Level level = Level.NONE;
 
+  private volatile HttpLogDispatcher dispatcher;
+
+  private volatile long maxBodyCapture = DEFAULT_MAX_BODY_CAPTURE;
+
   /** Change the level at which this interceptor logs. */
   public HttpLoggingInterceptor2 setLevel(Level level) {
     if (level == null) throw new NullPointerException("level == null. Use Level.NONE instead.");
@@ -122,6 +133,30 @@ public final class HttpLoggingInterceptor2 implements Interceptor {
     return level;
   }
 
+  /**
+   * 异步输出日志，请求线程只采集记录，格式化和打印在 {@link HttpLogDispatcher} 的后台线程完成，
+   * 请求耗时不再受日志级别影响
+   */
+  public HttpLoggingInterceptor2 setAsync(boolean async) {
+    return setDispatcher(async ? HttpLogDispatcher.getDefault() : null);
+  }
+
+  /**
+   * BODY级别下最多截取请求/响应body的字节数，body在调用方读写时顺带截取，
+   * 不会把整个body提前读进内存，大文件下载内存占用与日志级别无关
+   */
+  public HttpLoggingInterceptor2 setMaxBodyCapture(long maxBodyCapture) {
+    if (maxBodyCapture < 0) throw new IllegalArgumentException("maxBodyCapture < 0");
+    this.maxBodyCapture = maxBodyCapture;
+    return this;
+  }
+
+  /** 使用指定的分发器异步输出日志，传 null 恢复为同步输出。 */
+  public HttpLoggingInterceptor2 setDispatcher(HttpLogDispatcher dispatcher) {
+    this.dispatcher = dispatcher;
+    return this;
+  }
+
   @Override public Response intercept(Chain chain) throws IOException {
     Level level = this.level;
 
@@ -132,183 +167,286 @@ public final class HttpLoggingInterceptor2 implements Interceptor {
 
     boolean logBody = level == Level.BODY;
     boolean logHeaders = logBody || level == Level.HEADERS;
+    long maxBodyCapture = this.maxBodyCapture;
 
     RequestBody requestBody = request.body();
     boolean hasRequestBody = requestBody != null;
 
     Connection connection = chain.connection();
+    String protocol = connection != null ? connection.protocol().toString() : null;
+    if (logBody && hasRequestBody && !bodyHasUnknownEncoding(request.headers())) {
+      long contentLength = requestBody.contentLength();
+      if (contentLength >= 0 && contentLength <= maxBodyCapture
+          && !requestBody.isOneShot() && !requestBody.isDuplex()) {
+        // 小的请求体先写到内存，和请求行一起在发出前输出
+        Buffer buffer = new Buffer();
+        requestBody.writeTo(buffer);
+        publish(HttpLogRecord.request(true, true, request.method(), request.url(), protocol,
+            request.headers(), requestBody.contentType(), contentLength, true,
+            HttpLogRecord.BODY_CAPTURED, buffer.readByteString(), contentLength, false));
+      } else {
+        // 大的或只能写一次的请求体在写出时顺带截取，请求行先输出，body写完后单独输出
+        publish(HttpLogRecord.request(true, true, request.method(), request.url(), protocol,
+            request.headers(), requestBody.contentType(), contentLength, true,
+            HttpLogRecord.BODY_STREAMED, null, 0, false));
+        request = request.newBuilder()
+            .method(request.method(),
+                new CapturingRequestBody(requestBody, request, maxBodyCapture))
+            .build();
+      }
+    } else {
+      publish(HttpLogRecord.request(logHeaders, logBody, request.method(), request.url(),
+          protocol, request.headers(),
+          hasRequestBody ? requestBody.contentType() : null,
+          hasRequestBody ? requestBody.contentLength() : -1L,
+          hasRequestBody,
+          logBody && hasRequestBody ? HttpLogRecord.BODY_ENCODED : HttpLogRecord.BODY_NONE,
+          null, 0, false));
+    }
+
+    long startNs = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (Exception e) {
+      publish(HttpLogRecord.failed(e));
+      throw e;
+    }
+    long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+    ResponseBody responseBody = response.body();
+    Headers headers = response.headers();
+    boolean hasResponseBody = HttpHeaders.hasBody(response);
+
+    if (logBody && hasResponseBody && !bodyHasUnknownEncoding(headers)) {
+      // 调用方读取body时顺带截取，读完或关闭时再输出响应日志，不会提前把body读进内存
+      return response.newBuilder()
+          .body(new CapturingResponseBody(responseBody, response, tookMs, maxBodyCapture))
+          .build();
+    }
+
+    publish(HttpLogRecord.response(logHeaders, logBody, response.request().url(), response.code(),
+        response.message(), tookMs, headers, responseBody.contentType(),
+        responseBody.contentLength(), hasResponseBody,
+        logBody && hasResponseBody ? HttpLogRecord.BODY_ENCODED : HttpLogRecord.BODY_NONE,
+        false, null, 0, false));
+    return response;
+  }
+
+  private void publish(HttpLogRecord record) {
+    HttpLogDispatcher dispatcher = this.dispatcher;
+    if (dispatcher != null) {
+      dispatcher.dispatch(record);
+    } else {
+      emit(record);
+    }
+  }
+
+  /**
+   * 格式化并输出一条日志，同步模式下在请求线程调用，异步模式下在 {@link HttpLogDispatcher} 线程调用
+   */
+  static void emit(HttpLogRecord record) {
+    com.orhanobut.logger.Logger.d(format(record));
+  }
+
+  static String format(HttpLogRecord record) {
+    switch (record.type) {
+      case HttpLogRecord.TYPE_REQUEST:
+        return formatRequest(record);
+      case HttpLogRecord.TYPE_RESPONSE:
+        return formatResponse(record);
+      case HttpLogRecord.TYPE_REQUEST_BODY:
+        return formatRequestBody(record);
+      default:
+        return "<-- HTTP FAILED: " + record.failure + "\n";
+    }
+  }
+
+  private static String formatRequest(HttpLogRecord record) {
     StringBuilder sb = new StringBuilder();
-    String requestStartMessage = "--> "
-        + request.method()
-        + ' ' + request.url()
-        + (connection != null ? " " + connection.protocol() : "");
-    if (!logHeaders && hasRequestBody) {
-      requestStartMessage += " (" + requestBody.contentLength() + "-byte body)";
+    sb.append("--> ").append(record.method).append(' ').append(record.url);
+    if (record.protocol != null) {
+      sb.append(' ').append(record.protocol);
+    }
+    if (!record.logHeaders && record.hasBody) {
+      sb.append(" (").append(record.contentLength).append("-byte body)");
     }
-    sb.append(requestStartMessage+" \n");
-//    logger.log(requestStartMessage);
+    sb.append(" \n");
 
-    if (logHeaders) {
-      if (hasRequestBody) {
+    if (record.logHeaders) {
+      if (record.hasBody) {
         // Request body headers are only present when installed as a network interceptor. Force
         // them to be included (when available) so there values are known.
-        if (requestBody.contentType() != null) {
-          sb.append("Content-Type: " + requestBody.contentType()+"\n");
-//          logger.log("Content-Type: " + requestBody.contentType());
+        if (record.contentType != null) {
+          sb.append("Content-Type: ").append(record.contentType).append('\n');
         }
-        if (requestBody.contentLength() != -1) {
-          sb.append("Content-Length: " + requestBody.contentLength()+"\n");
-//          logger.log("Content-Length: " + requestBody.contentLength());
+        if (record.contentLength != -1) {
+          sb.append("Content-Length: ").append(record.contentLength).append('\n');
         }
       }
 
-      Headers headers = request.headers();
+      Headers headers = record.headers;
       for (int i = 0, count = headers.size(); i < count; i++) {
         String name = headers.name(i);
         // Skip headers from the request body as they are explicitly logged above.
         if (!"Content-Type".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)) {
-//          logger.log(name + ": " + headers.value(i));
-          sb.append(name + ": " + headers.value(i)+"\n");
+          sb.append(name).append(": ").append(headers.value(i)).append('\n');
         }
       }
 
-      if (!logBody || !hasRequestBody) {
-//        logger.log("--> END " + request.method());
-        sb.append("--> END " + request.method()+"\n");
-      } else if (bodyHasUnknownEncoding(request.headers())) {
-        sb.append("--> END " + request.method() + " (encoded body omitted)"+"\n");
-//        logger.log("--> END " + request.method() + " (encoded body omitted)");
+      if (!record.logBody || !record.hasBody) {
+        sb.append("--> END ").append(record.method).append('\n');
+      } else if (record.bodyState == HttpLogRecord.BODY_ENCODED) {
+        sb.append("--> END ").append(record.method).append(" (encoded body omitted)\n");
+      } else if (record.bodyState == HttpLogRecord.BODY_STREAMED) {
+        sb.append("--> END ").append(record.method).append(" (body logged after it is sent)\n");
       } else {
-        Buffer buffer = new Buffer();
-        requestBody.writeTo(buffer);
+        sb.append('\n');
+        appendRequestBody(sb, record);
+      }
+    }
+    return sb.toString();
+  }
 
-        Charset charset = UTF8;
-        MediaType contentType = requestBody.contentType();
-        if (contentType != null) {
-          charset = contentType.charset(UTF8);
-        }
+  private static String formatRequestBody(HttpLogRecord record) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("--> BODY ").append(record.method).append(' ').append(record.url).append('\n');
+    appendRequestBody(sb, record);
+    return sb.toString();
+  }
 
-        sb.append("\n");
-//        logger.log("");
-        if (isPlaintext(buffer)) {
-          sb.append(buffer.readString(charset)+"\n");
-          sb.append("--> END " + request.method()
-                  + " (" + requestBody.contentLength() + "-byte body)"+"\n");
-//          logger.log(buffer.readString(charset));
-//          logger.log("--> END " + request.method()
-//              + " (" + requestBody.contentLength() + "-byte body)");
-        } else {
-          sb.append("--> END " + request.method() + " (binary "
-                  + requestBody.contentLength() + "-byte body omitted)"+"\n");
-//          logger.log("--> END " + request.method() + " (binary "
-//              + requestBody.contentLength() + "-byte body omitted)");
-        }
-      }
+  private static void appendRequestBody(StringBuilder sb, HttpLogRecord record) {
+    Buffer buffer = new Buffer().write(record.body);
+    if (isPlaintext(buffer)) {
+      sb.append(buffer.readString(charset(record.contentType))).append('\n');
+      sb.append("--> END ").append(record.method).append(" (");
+      appendBodySize(sb, record.body.size(), record.bodyBytes, record.truncated);
+      sb.append(")\n");
+    } else {
+      sb.append("--> END ").append(record.method)
+          .append(" (binary ").append(record.bodyBytes).append("-byte body omitted)\n");
     }
-    com.orhanobut.logger.Logger.d(sb.toString());
-    StringBuilder sbr = new StringBuilder();
-    long startNs = System.nanoTime();
-    Response response;
-    try {
-      response = chain.proceed(request);
-    } catch (Exception e) {
-      sbr.append("<-- HTTP FAILED: " + e+"\n");
-//      logger.log("<-- HTTP FAILED: " + e);
-      throw e;
+  }
+
+  private static String formatResponse(HttpLogRecord record) {
+    StringBuilder sb = new StringBuilder();
+    long contentLength = record.contentLength;
+    sb.append("<-- ").append(record.code);
+    if (!record.message.isEmpty()) {
+      sb.append(' ').append(record.message);
     }
-    long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+    sb.append(' ').append(record.url).append(" (").append(record.tookMs).append("ms");
+    if (!record.logHeaders) {
+      sb.append(", ");
+      if (contentLength != -1) {
+        sb.append(contentLength).append("-byte");
+      } else {
+        sb.append("unknown-length");
+      }
+      sb.append(" body");
+    }
+    sb.append(")\n");
 
-    ResponseBody responseBody = response.body();
-    long contentLength = responseBody.contentLength();
-    String bodySize = contentLength != -1 ? contentLength + "-byte" : "unknown-length";
-    sbr.append("<-- "
-            + response.code()
-            + (response.message().isEmpty() ? "" : ' ' + response.message())
-            + ' ' + response.request().url()
-            + " (" + tookMs + "ms" + (!logHeaders ? ", " + bodySize + " body" : "") + ')'+"\n");
-//    logger.log("<-- "
-//        + response.code()
-//        + (response.message().isEmpty() ? "" : ' ' + response.message())
-//        + ' ' + response.request().url()
-//        + " (" + tookMs + "ms" + (!logHeaders ? ", " + bodySize + " body" : "") + ')');
-
-    if (logHeaders) {
-      Headers headers = response.headers();
+    if (record.logHeaders) {
+      Headers headers = record.headers;
       for (int i = 0, count = headers.size(); i < count; i++) {
-//        logger.log(headers.name(i) + ": " + headers.value(i));
-        sbr.append(headers.name(i) + ": " + headers.value(i)+"\n");
+        sb.append(headers.name(i)).append(": ").append(headers.value(i)).append('\n');
       }
 
-      if (!logBody || !HttpHeaders.hasBody(response)) {
-//        logger.log("<-- END HTTP");
-        sbr.append("<-- END HTTP"+"\n");
-      } else if (bodyHasUnknownEncoding(response.headers())) {
-        sbr.append("<-- END HTTP (encoded body omitted)"+"\n");
-//        logger.log("<-- END HTTP (encoded body omitted)");
+      if (!record.logBody || !record.hasBody) {
+        sb.append("<-- END HTTP\n");
+      } else if (record.bodyState == HttpLogRecord.BODY_ENCODED) {
+        sb.append("<-- END HTTP (encoded body omitted)\n");
       } else {
-        BufferedSource source = responseBody.source();
-        source.request(Long.MAX_VALUE); // Buffer the entire body.
-        Buffer buffer = source.buffer();
+        Buffer buffer = new Buffer().write(record.body);
 
         Long gzippedLength = null;
-        if ("gzip".equalsIgnoreCase(headers.get("Content-Encoding"))) {
-          gzippedLength = buffer.size();
-          GzipSource gzippedResponseBody = null;
-          try {
-            gzippedResponseBody = new GzipSource(buffer.clone());
-            buffer = new Buffer();
-            buffer.writeAll(gzippedResponseBody);
-          } finally {
-            if (gzippedResponseBody != null) {
-              gzippedResponseBody.close();
-            }
+        if (record.gzip) {
+          gzippedLength = record.bodyBytes;
+          buffer = gunzip(buffer);
+          if (buffer == null) {
+            sb.append("<-- END HTTP (").append(gzippedLength)
+                .append("-gzipped-byte body unreadable)\n");
+            return sb.toString();
           }
         }
 
-        Charset charset = UTF8;
-        MediaType contentType = responseBody.contentType();
-        if (contentType != null) {
-          charset = contentType.charset(UTF8);
-        }
-
+        long size = buffer.size();
         if (!isPlaintext(buffer)) {
-//          logger.log("");
-          sbr.append("<-- END HTTP (binary " + buffer.size() + "-byte body omitted)"+"\n");
-
-//          logger.log("<-- END HTTP (binary " + buffer.size() + "-byte body omitted)");
-          return response;
+          sb.append("<-- END HTTP (binary ").append(gzippedLength != null ? gzippedLength : size)
+              .append(gzippedLength != null ? "-gzipped" : "").append("-byte body omitted)\n");
+          return sb.toString();
         }
 
         if (contentLength != 0) {
-//          logger.log("");
-//          logger.log(buffer.clone().readString(charset));
-          sbr.append(unicodeToUTF_8(buffer.clone().readString(charset))+"\n");
-
+          sb.append(decodeUnicode(buffer.readString(charset(record.contentType)))).append('\n');
         }
 
         if (gzippedLength != null) {
-          sbr.append("<-- END HTTP (" + buffer.size() + "-byte, "
-                  + gzippedLength + "-gzipped-byte body)"+"\n");
-//            logger.log("<-- END HTTP (" + buffer.size() + "-byte, "
-//                + gzippedLength + "-gzipped-byte body)");
+          sb.append("<-- END HTTP (").append(size).append("-byte");
+          if (record.truncated) {
+            sb.append(" captured");
+          }
+          sb.append(", ").append(gzippedLength).append("-gzipped-byte body)\n");
         } else {
-          sbr.append("<-- END HTTP (" + buffer.size() + "-byte body)");
-//            logger.log("<-- END HTTP (" + buffer.size() + "-byte body)");
+          sb.append("<-- END HTTP (");
+          appendBodySize(sb, size, record.bodyBytes, record.truncated);
+          sb.append(')');
         }
       }
     }
-    com.orhanobut.logger.Logger.d(sbr.toString());
-    sb = null;
-    sbr= null;
-    return response;
+    return sb.toString();
+  }
+
+  private static void appendBodySize(StringBuilder sb, long captured, long total,
+      boolean truncated) {
+    if (truncated && total > captured) {
+      sb.append(captured).append(" of ").append(total).append("-byte body");
+    } else if (truncated) {
+      sb.append(captured).append("-byte body, not fully read");
+    } else {
+      sb.append(total).append("-byte body");
+    }
+  }
+
+  /**
+   * 解压截取到的gzip内容，截断的数据解压到哪算哪
+   */
+  private static Buffer gunzip(Buffer gzipped) {
+    Buffer out = new Buffer();
+    GzipSource source = null;
+    try {
+      source = new GzipSource(gzipped);
+      while (source.read(out, 8192) != -1) {
+      }
+    } catch (EOFException truncated) {
+      // 只截取了前缀，保留已解压部分
+    } catch (IOException e) {
+      return out.size() > 0 ? out : null;
+    } finally {
+      if (source != null) {
+        try {
+          source.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+    return out;
+  }
+
+  private static Charset charset(MediaType contentType) {
+    return contentType != null ? contentType.charset(UTF8) : UTF8;
   }
 
   public  String unicodeToUTF_8(String src) {
+    return decodeUnicode(src);
+  }
+
+  private static String decodeUnicode(String src) {
     if (null == src) {
       return null;
     }
-//    System.out.println("src: " + src);
-    StringBuilder out = new StringBuilder();
+    StringBuilder out = new StringBuilder(src.length());
     for (int i = 0; i < src.length(); ) {
       char c = src.charAt(i);
       if (i + 6 < src.length() && c == '\\' && src.charAt(i + 1) == 'u') {
@@ -320,7 +458,7 @@ public final class HttpLoggingInterceptor2 implements Interceptor {
         }
         i = i + 6;
       } else {
-        out.append(src.charAt(i));
+        out.append(c);
         ++i;
       }
     }
@@ -356,4 +494,158 @@ public final class HttpLoggingInterceptor2 implements Interceptor {
         && !contentEncoding.equalsIgnoreCase("identity")
         && !contentEncoding.equalsIgnoreCase("gzip");
   }
+
+  /**
+   * 写出请求体时截取前 limit 字节，写完后输出请求体日志
+   */
+  private final class CapturingRequestBody extends RequestBody {
+    private final RequestBody delegate;
+    private final Request request;
+    private final long limit;
+
+    CapturingRequestBody(RequestBody delegate, Request request, long limit) {
+      this.delegate = delegate;
+      this.request = request;
+      this.limit = limit;
+    }
+
+    @Override public MediaType contentType() {
+      return delegate.contentType();
+    }
+
+    @Override public long contentLength() throws IOException {
+      return delegate.contentLength();
+    }
+
+    @Override public boolean isDuplex() {
+      return delegate.isDuplex();
+    }
+
+    @Override public boolean isOneShot() {
+      return delegate.isOneShot();
+    }
+
+    @Override public void writeTo(BufferedSink sink) throws IOException {
+      final Buffer captured = new Buffer();
+      final long[] total = new long[1];
+      BufferedSink tee = Okio.buffer(new ForwardingSink(sink) {
+        @Override public void write(Buffer source, long byteCount) throws IOException {
+          long remaining = limit - captured.size();
+          if (remaining > 0) {
+            source.copyTo(captured, 0, Math.min(byteCount, remaining));
+          }
+          total[0] += byteCount;
+          super.write(source, byteCount);
+        }
+      });
+      delegate.writeTo(tee);
+      tee.emit();
+
+      publish(HttpLogRecord.requestBody(request.method(), request.url(), delegate.contentType(),
+          captured.readByteString(), total[0], total[0] > limit));
+    }
+  }
+
+  /**
+   * 调用方读取响应体时截取前 limit 字节，读完或关闭时输出响应日志
+   */
+  private final class CapturingResponseBody extends ResponseBody {
+    private final ResponseBody delegate;
+    private final Response response;
+    private final long tookMs;
+    private final long limit;
+    private BufferedSource source;
+    private boolean completed;
+
+    CapturingResponseBody(ResponseBody delegate, Response response, long tookMs, long limit) {
+      this.delegate = delegate;
+      this.response = response;
+      this.tookMs = tookMs;
+      this.limit = limit;
+    }
+
+    @Override public MediaType contentType() {
+      return delegate.contentType();
+    }
+
+    @Override public long contentLength() {
+      return delegate.contentLength();
+    }
+
+    @Override public BufferedSource source() {
+      if (source == null) {
+        source = Okio.buffer(new CapturingSource(delegate.source()));
+      }
+      return source;
+    }
+
+    @Override public void close() {
+      if (source != null) {
+        try {
+          source.close();
+        } catch (IOException ignored) {
+        }
+      } else {
+        delegate.close();
+        complete(new Buffer(), 0, false);
+      }
+    }
+
+    /**
+     * @param total 调用方读取的字节数
+     * @param eof   是否读到了结尾
+     */
+    void complete(Buffer captured, long total, boolean eof) {
+      if (completed) return;
+      completed = true;
+      long contentLength = delegate.contentLength();
+      // 超过截取上限，或者没读到结尾且少于 Content-Length（长度未知时一个字节都没读）
+      boolean truncated = total > captured.size()
+          || (!eof && (contentLength < 0 ? total == 0 : total < contentLength));
+      Headers headers = response.headers();
+      publish(HttpLogRecord.response(true, true, response.request().url(), response.code(),
+          response.message(), tookMs, headers, delegate.contentType(), contentLength,
+          true, HttpLogRecord.BODY_CAPTURED,
+          "gzip".equalsIgnoreCase(headers.get("Content-Encoding")),
+          captured.readByteString(), Math.max(total, contentLength), truncated));
+    }
+
+    private final class CapturingSource extends ForwardingSource {
+      private final Buffer captured = new Buffer();
+      private long total;
+
+      CapturingSource(Source delegate) {
+        super(delegate);
+      }
+
+      @Override public long read(Buffer sink, long byteCount) throws IOException {
+        long read;
+        try {
+          read = super.read(sink, byteCount);
+        } catch (IOException e) {
+          complete(captured, total, false);
+          throw e;
+        }
+        if (read == -1) {
+          complete(captured, total, true);
+          return -1;
+        }
+        long remaining = limit - captured.size();
+        if (remaining > 0) {
+          sink.copyTo(captured, sink.size() - read, Math.min(read, remaining));
+        }
+        total += read;
+        return read;
+      }
+
+      @Override public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          // 没有读到结尾就关闭，是否完整按 Content-Length 判断
+          complete(captured, total, false);
+        }
+      }
+    }
+  }
 }
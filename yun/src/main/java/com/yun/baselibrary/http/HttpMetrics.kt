@@ -0,0 +1,329 @@
+package com.yun.baselibrary.http
+
+import okhttp3.Call
+import okhttp3.Connection
+import okhttp3.EventListener
+import okhttp3.Handshake
+import okhttp3.HttpUrl
+import okhttp3.Protocol
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 网络分阶段耗时统计，通过 OkHttp 的 EventListener 记录每个请求的 DNS、建连、TLS、首包、body 耗时，
+ * 按 host + 路径模板聚合成直方图，可随时取 p50/p95/p99 快照
+ *
+ * 使用：OkHttpClient.Builder().eventListenerFactory(HttpMetrics.eventListenerFactory)
+ */
+object HttpMetrics {
+
+    /**
+     * 请求阶段
+     */
+    enum class Phase {
+        /** 从发起请求到拿到连接，包含排队和建连 */
+        ACQUIRE,
+        DNS,
+        /** TCP建连，包含TLS */
+        CONNECT,
+        TLS,
+        /** 请求头开始发送到响应头开始返回，基本等于服务端耗时 */
+        TTFB,
+        /** 响应body传输 */
+        BODY,
+        TOTAL
+    }
+
+    data class PhaseStats(
+        val count: Long,
+        val p50Ms: Double,
+        val p95Ms: Double,
+        val p99Ms: Double,
+        val maxMs: Double
+    )
+
+    data class EndpointStats(
+        val key: String,
+        val calls: Long,
+        val failures: Long,
+        val reusedConnections: Long,
+        val bytesSent: Long,
+        val bytesReceived: Long,
+        val phases: Map<Phase, PhaseStats>
+    )
+
+    /**
+     * 路径模板，默认把纯数字、长十六进制和uuid段替换成 {id}，避免按id打散统计
+     */
+    @Volatile
+    var pathTemplate: (HttpUrl) -> String = ::defaultPathTemplate
+
+    /**
+     * 单个进程最多统计的接口数，超出后归到 [OVERFLOW_KEY]
+     */
+    @Volatile
+    var maxEndpoints = 256
+
+    const val OVERFLOW_KEY = "other"
+
+    private val endpoints = ConcurrentHashMap<String, EndpointMetrics>()
+
+    val eventListenerFactory: EventListener.Factory = EventListener.Factory { CallListener() }
+
+    /**
+     * 当前所有接口的统计快照
+     */
+    fun snapshot(): List<EndpointStats> {
+        return endpoints.values.map { it.snapshot() }.sortedByDescending { it.calls }
+    }
+
+    fun reset() {
+        endpoints.clear()
+    }
+
+    /**
+     * 便于直接打日志的文本
+     */
+    fun dump(): String {
+        val sb = StringBuilder()
+        for (stats in snapshot()) {
+            sb.append(stats.key)
+                .append(" calls=").append(stats.calls)
+                .append(" failed=").append(stats.failures)
+                .append(" reused=").append(stats.reusedConnections)
+                .append(" out=").append(stats.bytesSent)
+                .append(" in=").append(stats.bytesReceived)
+                .append('\n')
+            for ((phase, p) in stats.phases) {
+                sb.append("  ").append(phase)
+                    .append(" p50=").append(format(p.p50Ms))
+                    .append(" p95=").append(format(p.p95Ms))
+                    .append(" p99=").append(format(p.p99Ms))
+                    .append(" max=").append(format(p.maxMs))
+                    .append('\n')
+            }
+        }
+        return sb.toString()
+    }
+
+    private fun format(ms: Double) = String.format("%.1fms", ms)
+
+    private fun endpoint(url: HttpUrl): EndpointMetrics {
+        val key = url.host() + pathTemplate(url)
+        endpoints[key]?.let { return it }
+        val target = if (endpoints.size >= maxEndpoints) OVERFLOW_KEY else key
+        return endpoints.getOrPut(target) { EndpointMetrics(target) }
+    }
+
+    private fun defaultPathTemplate(url: HttpUrl): String {
+        val sb = StringBuilder()
+        for (segment in url.pathSegments()) {
+            sb.append('/')
+            sb.append(if (isIdSegment(segment)) "{id}" else segment)
+        }
+        return sb.toString()
+    }
+
+    private fun isIdSegment(segment: String): Boolean {
+        if (segment.isEmpty()) return false
+        if (segment.all { it.isDigit() }) return true
+        return segment.length >= 16 && segment.all { it.isDigit() || it in 'a'..'f' || it in 'A'..'F' || it == '-' }
+    }
+
+    private class EndpointMetrics(val key: String) {
+        val calls = AtomicLong()
+        val failures = AtomicLong()
+        val reused = AtomicLong()
+        val bytesSent = AtomicLong()
+        val bytesReceived = AtomicLong()
+        val histograms = Array(Phase.values().size) { Histogram() }
+
+        fun snapshot(): EndpointStats {
+            val phases = LinkedHashMap<Phase, PhaseStats>()
+            for (phase in Phase.values()) {
+                histograms[phase.ordinal].snapshot()?.let { phases[phase] = it }
+            }
+            return EndpointStats(
+                key, calls.get(), failures.get(), reused.get(),
+                bytesSent.get(), bytesReceived.get(), phases
+            )
+        }
+    }
+
+    /**
+     * 对数分桶直方图，桶上界从0.5ms开始每档×1.25，误差在25%以内，内存固定
+     */
+    private class Histogram {
+        private val counts = LongArray(BUCKETS)
+        private var total = 0L
+        private var maxNanos = 0L
+
+        @Synchronized
+        fun record(nanos: Long) {
+            if (nanos < 0) return
+            counts[bucketOf(nanos)]++
+            total++
+            if (nanos > maxNanos) maxNanos = nanos
+        }
+
+        @Synchronized
+        fun snapshot(): PhaseStats? {
+            if (total == 0L) return null
+            return PhaseStats(
+                total,
+                percentile(0.50),
+                percentile(0.95),
+                percentile(0.99),
+                maxNanos / NANOS_PER_MS
+            )
+        }
+
+        private fun percentile(p: Double): Double {
+            val rank = Math.ceil(total * p).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in counts.indices) {
+                seen += counts[i]
+                if (seen >= rank) {
+                    return Math.min(upperBoundMs(i), maxNanos / NANOS_PER_MS)
+                }
+            }
+            return maxNanos / NANOS_PER_MS
+        }
+
+        companion object {
+            private const val BUCKETS = 64
+            private const val FIRST_BOUND_MS = 0.5
+            private const val GROWTH = 1.25
+            private const val NANOS_PER_MS = 1_000_000.0
+            private val LOG_GROWTH = Math.log(GROWTH)
+
+            fun bucketOf(nanos: Long): Int {
+                val ms = nanos / NANOS_PER_MS
+                if (ms <= FIRST_BOUND_MS) return 0
+                val index = Math.ceil(Math.log(ms / FIRST_BOUND_MS) / LOG_GROWTH).toInt()
+                return index.coerceAtMost(BUCKETS - 1)
+            }
+
+            fun upperBoundMs(bucket: Int): Double = FIRST_BOUND_MS * Math.pow(GROWTH, bucket.toDouble())
+        }
+    }
+
+    /**
+     * 每个Call一个实例，只在该Call的线程上回调
+     */
+    private class CallListener : EventListener() {
+        private var callStart = 0L
+        private var dnsStart = 0L
+        private var connectStart = 0L
+        private var secureConnectStart = 0L
+        private var requestStart = 0L
+        private var responseBodyStart = 0L
+
+        private var dnsNanos = -1L
+        private var connectNanos = -1L
+        private var tlsNanos = -1L
+        private var acquireNanos = -1L
+        private var ttfbNanos = -1L
+        private var bodyNanos = -1L
+
+        private var connected = false
+        private var reused = false
+        private var bytesSent = 0L
+        private var bytesReceived = 0L
+
+        override fun callStart(call: Call) {
+            callStart = System.nanoTime()
+        }
+
+        override fun dnsStart(call: Call, domainName: String) {
+            dnsStart = System.nanoTime()
+        }
+
+        override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+            dnsNanos = System.nanoTime() - dnsStart
+        }
+
+        override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+            connectStart = System.nanoTime()
+            connected = true
+        }
+
+        override fun secureConnectStart(call: Call) {
+            secureConnectStart = System.nanoTime()
+        }
+
+        override fun secureConnectEnd(call: Call, handshake: Handshake?) {
+            tlsNanos = System.nanoTime() - secureConnectStart
+        }
+
+        override fun connectEnd(
+            call: Call,
+            inetSocketAddress: InetSocketAddress,
+            proxy: Proxy,
+            protocol: Protocol?
+        ) {
+            connectNanos = System.nanoTime() - connectStart
+        }
+
+        override fun connectionAcquired(call: Call, connection: Connection) {
+            // 同一个Call重试时只记第一次拿连接
+            if (acquireNanos < 0) {
+                acquireNanos = System.nanoTime() - callStart
+                reused = !connected
+            }
+        }
+
+        override fun requestHeadersStart(call: Call) {
+            requestStart = System.nanoTime()
+        }
+
+        override fun requestBodyEnd(call: Call, byteCount: Long) {
+            bytesSent += byteCount
+        }
+
+        override fun responseHeadersStart(call: Call) {
+            if (requestStart != 0L) {
+                ttfbNanos = System.nanoTime() - requestStart
+            }
+        }
+
+        override fun responseBodyStart(call: Call) {
+            responseBodyStart = System.nanoTime()
+        }
+
+        override fun responseBodyEnd(call: Call, byteCount: Long) {
+            bodyNanos = System.nanoTime() - responseBodyStart
+            bytesReceived += byteCount
+        }
+
+        override fun callEnd(call: Call) {
+            finish(call, false)
+        }
+
+        override fun callFailed(call: Call, ioe: IOException) {
+            finish(call, true)
+        }
+
+        private fun finish(call: Call, failed: Boolean) {
+            val metrics = endpoint(call.request().url())
+            metrics.calls.incrementAndGet()
+            if (failed) metrics.failures.incrementAndGet()
+            if (reused) metrics.reused.incrementAndGet()
+            metrics.bytesSent.addAndGet(bytesSent)
+            metrics.bytesReceived.addAndGet(bytesReceived)
+
+            val h = metrics.histograms
+            if (acquireNanos >= 0) h[Phase.ACQUIRE.ordinal].record(acquireNanos)
+            if (dnsNanos >= 0) h[Phase.DNS.ordinal].record(dnsNanos)
+            if (connectNanos >= 0) h[Phase.CONNECT.ordinal].record(connectNanos)
+            if (tlsNanos >= 0) h[Phase.TLS.ordinal].record(tlsNanos)
+            if (ttfbNanos >= 0) h[Phase.TTFB.ordinal].record(ttfbNanos)
+            if (bodyNanos >= 0) h[Phase.BODY.ordinal].record(bodyNanos)
+            h[Phase.TOTAL.ordinal].record(System.nanoTime() - callStart)
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.yun.baselibrary.http
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+
+/**
+ * 请求调度，按优先级排队，限制总并发和单个host的并发
+ *
+ * 低优先级只能使用部分并发额度，给用户正在等待的请求留出余量；同一优先级先来先服务，
+ * 某个host达到上限时跳过它，不会挡住其他host的请求。排队中的协程被取消（如 viewModelScope 结束）
+ * 会直接出队
+ *
+ * BaseViewModel.request 只有传了 priority 的请求才经过这里，host 需要调用方传入
+ * （如 HttpUrl.get(baseUrl).host()），不传时只受总并发限制
+ */
+object RequestScheduler {
+    private const val NANOS_PER_MS = 1_000_000.0
+
+    enum class Priority(internal val shareOfConcurrency: Double) {
+        /** 用户正在等待结果，如点击提交 */
+        USER_BLOCKING(1.0),
+
+        /** 当前页面展示需要的数据 */
+        VISIBLE(1.0),
+
+        /** 预加载 */
+        PREFETCH(0.5),
+
+        /** 统计上报等后台任务 */
+        BACKGROUND(0.25)
+    }
+
+    data class QueueStats(
+        val priority: Priority,
+        val queued: Int,
+        val started: Long,
+        val avgWaitMs: Double,
+        val maxWaitMs: Double
+    )
+
+    private class Waiter(val host: String?, val priority: Priority) {
+        val enqueuedAt = System.nanoTime()
+        val signal = CompletableDeferred<Unit>()
+        var granted = false
+    }
+
+    private class WaitStats {
+        var started = 0L
+        var totalWaitNanos = 0L
+        var maxWaitNanos = 0L
+    }
+
+    /** 总并发 */
+    @Volatile
+    var maxConcurrent = 16
+
+    /** 单个host并发 */
+    @Volatile
+    var maxPerHost = 6
+
+    private val lock = Any()
+    private val queues = Array(Priority.values().size) { ArrayList<Waiter>() }
+    private val waitStats = Array(Priority.values().size) { WaitStats() }
+    private val hostRunning = HashMap<String, Int>()
+    private var running = 0
+
+    /**
+     * 排队拿到执行额度后执行 block
+     * @param host 请求的host，为空时只受总并发限制
+     */
+    suspend fun <T> execute(host: String?, priority: Priority, block: suspend () -> T): T {
+        acquire(host, priority)
+        try {
+            return block()
+        } finally {
+            release(host)
+        }
+    }
+
+    fun snapshot(): List<QueueStats> {
+        synchronized(lock) {
+            return Priority.values().map {
+                val stats = waitStats[it.ordinal]
+                QueueStats(
+                    it,
+                    queues[it.ordinal].size,
+                    stats.started,
+                    if (stats.started == 0L) 0.0 else stats.totalWaitNanos / stats.started / NANOS_PER_MS,
+                    stats.maxWaitNanos / NANOS_PER_MS
+                )
+            }
+        }
+    }
+
+    private suspend fun acquire(host: String?, priority: Priority) {
+        val waiter = Waiter(host, priority)
+        synchronized(lock) {
+            if (!hasQueuedAtOrAbove(priority) && canStart(host, priority)) {
+                startLocked(waiter)
+                return
+            }
+            queues[priority.ordinal].add(waiter)
+        }
+        try {
+            waiter.signal.await()
+        } catch (e: CancellationException) {
+            val release = synchronized(lock) {
+                waiter.granted || !queues[priority.ordinal].remove(waiter)
+            }
+            //已经分到额度但调用方取消了，把额度还回去
+            if (release) release(host)
+            throw e
+        }
+    }
+
+    private fun release(host: String?) {
+        val ready = ArrayList<Waiter>()
+        synchronized(lock) {
+            running--
+            if (host != null) {
+                val count = (hostRunning[host] ?: 1) - 1
+                if (count <= 0) hostRunning.remove(host) else hostRunning[host] = count
+            }
+            for (queue in queues) {
+                val iterator = queue.iterator()
+                while (iterator.hasNext()) {
+                    val waiter = iterator.next()
+                    if (canStart(waiter.host, waiter.priority)) {
+                        iterator.remove()
+                        startLocked(waiter)
+                        ready.add(waiter)
+                    }
+                }
+            }
+        }
+        for (waiter in ready) {
+            waiter.signal.complete(Unit)
+        }
+    }
+
+    private fun hasQueuedAtOrAbove(priority: Priority): Boolean {
+        for (i in 0..priority.ordinal) {
+            if (queues[i].isNotEmpty()) return true
+        }
+        return false
+    }
+
+    private fun canStart(host: String?, priority: Priority): Boolean {
+        val limit = Math.max(1, (maxConcurrent * priority.shareOfConcurrency).toInt())
+        if (running >= limit) return false
+        return host == null || (hostRunning[host] ?: 0) < maxPerHost
+    }
+
+    private fun startLocked(waiter: Waiter) {
+        waiter.granted = true
+        running++
+        waiter.host?.let { hostRunning[it] = (hostRunning[it] ?: 0) + 1 }
+        val wait = System.nanoTime() - waiter.enqueuedAt
+        val stats = waitStats[waiter.priority.ordinal]
+        stats.started++
+        stats.totalWaitNanos += wait
+        if (wait > stats.maxWaitNanos) stats.maxWaitNanos = wait
+    }
+}
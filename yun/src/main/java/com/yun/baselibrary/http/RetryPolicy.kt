@@ -0,0 +1,121 @@
+package com.yun.baselibrary.http
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import retrofit2.HttpException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.random.Random
+
+/**
+ * 请求失败重试策略，根据 [ExceptionHandle] 的分类决定是否重试，重试间隔指数退避并带随机抖动
+ *
+ * 所有重试共用一个 [RetryBudget]，服务端大面积故障时重试不会成倍放大请求量
+ *
+ * @param maxAttempts 最多请求次数，包含第一次
+ * @param initialDelay 第一次重试前的等待（毫秒）
+ * @param maxDelay 单次等待上限（毫秒）
+ * @param jitter 抖动比例，实际等待在 delay*(1-jitter) 到 delay 之间
+ * @param deadline 从第一次请求开始计算的总时长（毫秒），超过后不再重试，0 表示不限制
+ * @param retryOn 可以重试的错误类型，HttpException 不看这个，只看 [retryOnHttpCodes]
+ * @param retryOnHttpCodes 可以重试的 HTTP 状态码
+ */
+class RetryPolicy(
+    val maxAttempts: Int = 3,
+    val initialDelay: Long = 300,
+    val maxDelay: Long = 5_000,
+    val multiplier: Double = 2.0,
+    val jitter: Double = 0.5,
+    val deadline: Long = 15_000,
+    val retryOn: Set<Error> = setOf(Error.TIMEOUT_ERROR, Error.NETWORD_ERROR),
+    val retryOnHttpCodes: Set<Int> = setOf(408, 429, 502, 503, 504)
+) {
+
+    fun isRetryable(e: Throwable): Boolean {
+        if (e is HttpException) return e.code() in retryOnHttpCodes
+        val errCode = ExceptionHandle.handleException(e).errCode
+        return retryOn.any { it.getKey() == errCode }
+    }
+
+    /**
+     * 按策略执行，返回成功结果或抛出最后一次的异常
+     */
+    suspend fun <T> execute(block: suspend () -> T): T {
+        val start = System.nanoTime()
+        var attempt = 1
+        var backoff = initialDelay.toDouble()
+        while (true) {
+            try {
+                val result = block()
+                RetryBudget.onSuccess(attempt > 1)
+                return result
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Throwable) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    if (attempt > 1) RetryBudget.exhausted.incrementAndGet()
+                    throw e
+                }
+                val wait = (backoff * (1 - jitter * Random.nextDouble())).toLong()
+                val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                if (deadline > 0 && elapsed + wait >= deadline) {
+                    RetryBudget.exhausted.incrementAndGet()
+                    throw e
+                }
+                if (!RetryBudget.tryAcquire()) throw e
+                delay(wait)
+                attempt++
+                backoff = Math.min(maxDelay.toDouble(), backoff * multiplier)
+            }
+        }
+    }
+}
+
+/**
+ * 全局重试预算，令牌桶：每次重试消耗一个令牌，每次成功请求返还 [refillPerSuccess] 个，
+ * 令牌不足一个时不再重试
+ */
+object RetryBudget {
+    private const val MAX_TOKENS = 10.0
+
+    @Volatile
+    var refillPerSuccess = 0.1
+
+    private var tokens = MAX_TOKENS
+
+    /** 发生的重试次数 */
+    val retries = AtomicLong()
+
+    /** 重试后成功的请求数 */
+    val recovered = AtomicLong()
+
+    /** 因预算不足放弃的重试次数 */
+    val denied = AtomicLong()
+
+    /** 重试次数或截止时间用完仍失败的请求数 */
+    val exhausted = AtomicLong()
+
+    internal fun tryAcquire(): Boolean {
+        synchronized(this) {
+            if (tokens < 1) {
+                denied.incrementAndGet()
+                return false
+            }
+            tokens -= 1
+        }
+        retries.incrementAndGet()
+        return true
+    }
+
+    internal fun onSuccess(retried: Boolean) {
+        if (retried) recovered.incrementAndGet()
+        synchronized(this) {
+            tokens = Math.min(MAX_TOKENS, tokens + refillPerSuccess)
+        }
+    }
+
+    fun dump(): String {
+        return "retries=${retries.get()} recovered=${recovered.get()} " +
+                "denied=${denied.get()} exhausted=${exhausted.get()}"
+    }
+}
@@ -0,0 +1,70 @@
+package com.yun.baselibrary.http
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 相同key的并发请求合并成一次，所有调用方共享同一个结果
+ *
+ * 单个调用方取消只影响自己，只有所有等待者都取消了才会取消真正的请求
+ */
+object SingleFlight {
+
+    private class Flight(val deferred: Deferred<Any?>) {
+        var waiters = 0
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val flights = HashMap<String, Flight>()
+
+    private val executed = AtomicLong()
+    private val coalesced = AtomicLong()
+
+    /**
+     * 实际发起的请求数
+     */
+    val executedCount: Long
+        get() = executed.get()
+
+    /**
+     * 合并到已有请求上的次数
+     */
+    val coalescedCount: Long
+        get() = coalesced.get()
+
+    @Suppress("UNCHECKED_CAST")
+    suspend fun <T> execute(key: String, block: suspend () -> T): T {
+        val flight = synchronized(flights) {
+            val existing = flights[key]
+            //LAZY 的 async 在 start 之前 isActive 为 false，要用 isCompleted 判断
+            if (existing != null && !existing.deferred.isCompleted && !existing.deferred.isCancelled) {
+                coalesced.incrementAndGet()
+                existing
+            } else {
+                executed.incrementAndGet()
+                Flight(scope.async(start = CoroutineStart.LAZY) { block() }).also {
+                    flights[key] = it
+                }
+            }.also {
+                it.waiters++
+                it.deferred.start()
+            }
+        }
+        try {
+            return flight.deferred.await() as T
+        } finally {
+            synchronized(flights) {
+                if (--flight.waiters == 0) {
+                    if (flights[key] === flight) flights.remove(key)
+                    //没有人在等了，取消还没结束的请求
+                    if (flight.deferred.isActive) flight.deferred.cancel()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.yun.baselibrary.http.cache
+
+import com.google.gson.reflect.TypeToken
+import com.yun.baselibrary.been.BaseResponse
+import java.lang.reflect.Type
+
+/**
+ * 请求缓存策略，传给 BaseViewModel.request 开启缓存
+ *
+ * @param key 缓存key，由调用方保证唯一，一般是接口名+参数
+ * @param ttl 有效期（毫秒），有效期内直接使用缓存，不再请求网络
+ * @param mode 缓存过期后的处理方式
+ * @param maxStale 过期后还能先展示的时长（毫秒），只对 [Mode.STALE_WHILE_REVALIDATE] 生效
+ * @param type BaseResponse<T> 的完整类型，传了才会落磁盘，否则只缓存在内存，用 [cachePolicy] 可自动生成
+ */
+class CachePolicy(
+    val key: String,
+    val ttl: Long,
+    val mode: Mode = Mode.CACHE_ELSE_NETWORK,
+    val maxStale: Long = Long.MAX_VALUE,
+    val type: Type? = null
+) {
+
+    enum class Mode {
+        /** 缓存有效直接用，过期则请求网络 */
+        CACHE_ELSE_NETWORK,
+
+        /** 先返回缓存（即使已过期），过期时再请求网络返回最新数据 */
+        STALE_WHILE_REVALIDATE
+    }
+
+    fun isFresh(entry: ResponseCache.Entry): Boolean = entry.age <= ttl
+
+    /**
+     * 缓存是否可以先展示
+     */
+    fun isUsable(entry: ResponseCache.Entry): Boolean {
+        return isFresh(entry) || (mode == Mode.STALE_WHILE_REVALIDATE && entry.age - ttl <= maxStale)
+    }
+}
+
+/**
+ * 带磁盘缓存的策略，类型由泛型推导
+ */
+inline fun <reified T> cachePolicy(
+    key: String,
+    ttl: Long,
+    mode: CachePolicy.Mode = CachePolicy.Mode.CACHE_ELSE_NETWORK,
+    maxStale: Long = Long.MAX_VALUE
+): CachePolicy = CachePolicy(key, ttl, mode, maxStale, object : TypeToken<BaseResponse<T>>() {}.type)
@@ -0,0 +1,108 @@
+package com.yun.baselibrary.http.cache
+
+import androidx.annotation.VisibleForTesting
+import androidx.annotation.WorkerThread
+import androidx.collection.LruCache
+import com.google.gson.Gson
+import com.yun.baselibrary.been.BaseResponse
+import com.yun.baselibrary.utils.MMKVUtils
+
+/**
+ * 请求结果的两级缓存：内存 LRU 存解析好的 BaseResponse，磁盘用 MMKV 存 json
+ */
+object ResponseCache {
+    private const val FILE_NAME = "http_response_cache"
+    private const val TIME_SUFFIX = "@time"
+    private const val MEMORY_ENTRIES = 64
+
+    class Entry(val response: BaseResponse<*>, val savedAt: Long) {
+        val age: Long
+            get() = System.currentTimeMillis() - savedAt
+    }
+
+    /**
+     * 磁盘层，默认保存在 MMKV，单元测试中替换成内存实现
+     */
+    internal interface DiskStore {
+        fun getString(key: String): String
+        fun getLong(key: String): Long
+        fun put(key: String, json: String, savedAt: Long)
+        fun remove(key: String)
+        fun clear()
+    }
+
+    private class MMKVDiskStore : DiskStore {
+        private val mmkv: MMKVUtils by lazy { MMKVUtils.getInstance(FILE_NAME) }
+
+        override fun getString(key: String): String = mmkv.getString(key, "")
+
+        override fun getLong(key: String): Long = mmkv.getLong(key + TIME_SUFFIX)
+
+        override fun put(key: String, json: String, savedAt: Long) {
+            mmkv.putString(key, json)
+            mmkv.putLong(key + TIME_SUFFIX, savedAt)
+        }
+
+        override fun remove(key: String) {
+            mmkv.removeValueForKey(key)
+            mmkv.removeValueForKey(key + TIME_SUFFIX)
+        }
+
+        override fun clear() {
+            mmkv.deleteFileContent()
+        }
+    }
+
+    private val gson = Gson()
+    private val memory = LruCache<String, Entry>(MEMORY_ENTRIES)
+
+    @VisibleForTesting
+    internal var disk: DiskStore = MMKVDiskStore()
+
+    /**
+     * 先查内存再查磁盘，磁盘命中后放回内存
+     */
+    @WorkerThread
+    fun get(policy: CachePolicy): Entry? {
+        memory.get(policy.key)?.let { return it }
+        val type = policy.type ?: return null
+        val json = disk.getString(policy.key)
+        if (json.isEmpty()) return null
+        //解析失败（如接口数据结构变了）时丢掉这条缓存
+        val response: BaseResponse<*> = try {
+            gson.fromJson<BaseResponse<*>>(json, type)
+        } catch (e: Exception) {
+            null
+        } ?: run {
+            remove(policy.key)
+            return null
+        }
+        val entry = Entry(response, disk.getLong(policy.key))
+        memory.put(policy.key, entry)
+        return entry
+    }
+
+    @WorkerThread
+    fun put(policy: CachePolicy, response: BaseResponse<*>) {
+        val entry = Entry(response, System.currentTimeMillis())
+        memory.put(policy.key, entry)
+        if (policy.type != null) {
+            disk.put(policy.key, gson.toJson(response, policy.type), entry.savedAt)
+        }
+    }
+
+    fun remove(key: String) {
+        memory.remove(key)
+        disk.remove(key)
+    }
+
+    fun clear() {
+        memory.evictAll()
+        disk.clear()
+    }
+
+    @VisibleForTesting
+    internal fun clearMemory() {
+        memory.evictAll()
+    }
+}
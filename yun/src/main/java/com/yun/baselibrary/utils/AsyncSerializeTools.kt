@@ -0,0 +1,166 @@
+package com.yun.baselibrary.utils
+
+import android.content.Context
+import androidx.collection.LruCache
+import com.google.gson.internal.Primitives
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.launch
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * SerializeTools 的异步版本，文件读写都在有限线程数的IO线程池中执行
+ *
+ * 读过和写过的对象保存在内存LRU中，[peek] 可以在主线程直接取；
+ * 同一个文件的并发读取只读一次磁盘，连续多次写入只写最后一次的值
+ */
+object AsyncSerializeTools {
+
+    private const val IO_THREADS = 2
+
+    private val threadCount = AtomicInteger()
+
+    private val dispatcher = Executors.newFixedThreadPool(IO_THREADS, ThreadFactory { runnable ->
+        Thread(runnable, "SerializeTools-io-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+    }).asCoroutineDispatcher()
+
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher)
+
+    private val memory = LruCache<String, Any>(64)
+
+    private val lock = Any()
+
+    /** 正在读取的文件 */
+    private val reads = HashMap<String, Deferred<Any?>>()
+
+    private class PendingWrite(@Volatile var value: Any) {
+        val result = CompletableDeferred<Boolean>()
+    }
+
+    /** 等待写入的值，同一个文件只保留最新的 */
+    private val pendingWrites = HashMap<String, PendingWrite>()
+
+    /** 正在写入的文件，同一个文件同时只有一个写入任务，保证写入顺序 */
+    private val writing = HashSet<String>()
+
+    /**
+     * 设置内存缓存的个数
+     */
+    @JvmStatic
+    fun setMemoryCacheSize(maxSize: Int) {
+        memory.resize(maxSize)
+    }
+
+    /**
+     * 只从内存中取，不读磁盘，可以在主线程调用
+     *
+     * @return 内存中没有或类型不对时返回null
+     */
+    @JvmStatic
+    fun <T> peek(fileName: String, classOfT: Class<T>): T? {
+        val pending = synchronized(lock) { pendingWrites[fileName] }
+        return cast(pending?.value ?: memory.get(fileName), classOfT)
+    }
+
+    /**
+     * 读取对象，内存中没有时在IO线程读取文件
+     */
+    suspend fun <T> getObj(context: Context, fileName: String, classOfT: Class<T>): T? {
+        peek(fileName, classOfT)?.let { return it }
+        val appContext = context.applicationContext ?: context
+        val deferred = synchronized(lock) {
+            pendingWrites[fileName]?.let { return cast(it.value, classOfT) }
+            reads[fileName] ?: scope.async(start = CoroutineStart.LAZY) {
+                try {
+                    load(appContext, fileName)
+                } finally {
+                    synchronized(lock) { reads.remove(fileName) }
+                }
+            }.also { reads[fileName] = it }
+        }
+        deferred.start()
+        return cast(deferred.await(), classOfT)
+    }
+
+    private fun load(context: Context, fileName: String): Any? {
+        memory.get(fileName)?.let { return it }
+        val value = SerializeTools.getObj(context, fileName, Any::class.java) ?: return null
+        synchronized(lock) {
+            //读取期间写入了新值，以新值为准
+            pendingWrites[fileName]?.let { return it.value }
+            memory.get(fileName)?.let { return it }
+            memory.put(fileName, value)
+        }
+        return value
+    }
+
+    /**
+     * 保存对象，立即更新内存缓存，文件在IO线程写入
+     *
+     * @return 文件是否写入成功；被后面的写入合并时返回合并后那次写入的结果
+     */
+    suspend fun cacheObj(context: Context, fileNameKey: String, obj: Any): Boolean {
+        return enqueueWrite(context, fileNameKey, obj).result.await()
+    }
+
+    /**
+     * 保存对象，不等待写入完成
+     */
+    @JvmStatic
+    fun cacheObjAsync(context: Context, fileNameKey: String, obj: Any) {
+        enqueueWrite(context, fileNameKey, obj)
+    }
+
+    private fun enqueueWrite(context: Context, fileNameKey: String, obj: Any): PendingWrite {
+        val appContext = context.applicationContext ?: context
+        synchronized(lock) {
+            memory.put(fileNameKey, obj)
+            val pending = pendingWrites[fileNameKey]?.also { it.value = obj }
+                ?: PendingWrite(obj).also { pendingWrites[fileNameKey] = it }
+            if (writing.add(fileNameKey)) {
+                scope.launch { drain(appContext, fileNameKey) }
+            }
+            return pending
+        }
+    }
+
+    /**
+     * 依次写入同一个文件等待中的值，直到没有新的写入
+     */
+    private fun drain(context: Context, fileNameKey: String) {
+        while (true) {
+            val pending = synchronized(lock) {
+                pendingWrites.remove(fileNameKey) ?: run {
+                    writing.remove(fileNameKey)
+                    return
+                }
+            }
+            val result = try {
+                SerializeTools.cacheObj(context, fileNameKey, pending.value)
+            } catch (e: Throwable) {
+                false
+            }
+            pending.result.complete(result)
+        }
+    }
+
+    /**
+     * 清空内存缓存，不影响文件
+     */
+    @JvmStatic
+    fun clearMemory() {
+        memory.evictAll()
+    }
+
+    private fun <T> cast(value: Any?, classOfT: Class<T>): T? {
+        val type = Primitives.wrap(classOfT)
+        return if (type.isInstance(value)) type.cast(value) else null
+    }
+}
@@ -0,0 +1,900 @@
+package com.yun.baselibrary.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.$Gson$Types;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @Desc 紧凑的二进制对象编码，数据模型和json一致，对象通过 Gson 的 TypeAdapter 直接流式读写，不需要额外注解
+ * <p>
+ * 格式：0xFF | 格式版本 | 标志位 | schemaVersion(varint) | 数据
+ * 整数用zigzag varint，字段名第一次出现写全名之后只写序号，超过阈值时整体deflate
+ * 读到的 schemaVersion 和当前不一致时视为不可用，对象结构不兼容时升级 schemaVersion 即可丢弃旧数据
+ */
+public class BinaryObjectCodec implements ObjectCodec {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    //json文本不会以0xFF开头
+    private static final byte MAGIC = (byte) 0xFF;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_TRUE = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    //BigDecimal等无法用long/double精确表示的数字
+    private static final int TAG_NUMBER = 6;
+    private static final int TAG_BEGIN_ARRAY = 7;
+    private static final int TAG_BEGIN_OBJECT = 8;
+    private static final int TAG_END = 9;
+    private static final int TAG_NAME = 10;
+    private static final int TAG_NAME_REF = 11;
+
+    private final int schemaVersion;
+    private final int compressThreshold;
+
+    private Gson sourceGson;
+    private Gson gson;
+    private final Map<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    public BinaryObjectCodec() {
+        this(0);
+    }
+
+    public BinaryObjectCodec(int schemaVersion) {
+        this(schemaVersion, DEFAULT_COMPRESS_THRESHOLD);
+    }
+
+    /**
+     * @param schemaVersion     对象结构版本
+     * @param compressThreshold 编码后超过这个字节数时压缩，小于0不压缩
+     */
+    public BinaryObjectCodec(int schemaVersion, int compressThreshold) {
+        this.schemaVersion = schemaVersion;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public boolean accepts(byte[] bytes) {
+        return bytes != null && bytes.length >= 3 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object value, Type type) throws IOException {
+        BinaryWriter writer = new BinaryWriter();
+        Gson gson = gson();
+        writer.setSerializeNulls(gson.serializeNulls());
+        adapter(type).write(writer, value);
+
+        Output payload = writer.out;
+        byte[] data = payload.bytes;
+        int length = payload.size;
+        int flags = 0;
+        if (compressThreshold >= 0 && length > compressThreshold) {
+            byte[] deflated = deflate(data, length);
+            if (deflated.length < length) {
+                flags |= FLAG_DEFLATE;
+                Output compressed = new Output(deflated.length + 5);
+                compressed.writeVarint(length);
+                compressed.write(deflated, 0, deflated.length);
+                data = compressed.bytes;
+                length = compressed.size;
+            }
+        }
+
+        Output out = new Output(length + 8);
+        out.write(MAGIC);
+        out.write(FORMAT_VERSION);
+        out.write(flags);
+        out.writeVarint(schemaVersion);
+        out.write(data, 0, length);
+        return out.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Type type) throws IOException {
+        if (!accepts(bytes) || bytes[1] != FORMAT_VERSION) {
+            return null;
+        }
+        Input in = new Input(bytes, 3, bytes.length);
+        if (in.readVarint() != schemaVersion) {
+            return null;
+        }
+        if ((bytes[2] & FLAG_DEFLATE) != 0) {
+            int length = in.readVarint();
+            in = new Input(inflate(bytes, in.position, bytes.length - in.position, length), 0, length);
+        }
+        return (T) adapter(type).read(new BinaryReader(in));
+    }
+
+    /**
+     * 在 MMKVUtils 使用的 Gson 基础上加上 Map 的读取，Gson 默认的 Map 读取依赖文本 JsonReader 的内部状态
+     */
+    private synchronized Gson gson() {
+        Gson current = JsonCodecs.gson();
+        if (current != sourceGson) {
+            sourceGson = current;
+            gson = current.newBuilder().registerTypeAdapterFactory(new MapAdapterFactory()).create();
+            adapters.clear();
+        }
+        return gson;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<Object> adapter(Type type) {
+        Gson gson = gson();
+        TypeAdapter<?> adapter = adapters.get(type);
+        if (adapter == null) {
+            adapter = gson.getAdapter(TypeToken.get(type));
+            adapters.put(type, adapter);
+        }
+        return (TypeAdapter<Object>) adapter;
+    }
+
+    private static final class MapAdapterFactory implements TypeAdapterFactory {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            if (!Map.class.isAssignableFrom(typeToken.getRawType())) {
+                return null;
+            }
+            Type[] keyAndValue = $Gson$Types.getMapKeyAndValueTypes(typeToken.getType(), typeToken.getRawType());
+            return new MapAdapter<>(gson.getDelegateAdapter(this, typeToken),
+                    gson.getAdapter(TypeToken.get(keyAndValue[0])), gson.getAdapter(TypeToken.get(keyAndValue[1])),
+                    keyAndValue[0] == String.class);
+        }
+    }
+
+    private static final class MapAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> delegate;
+        private final TypeAdapter<?> keyAdapter;
+        private final TypeAdapter<?> valueAdapter;
+        private final boolean stringKey;
+
+        MapAdapter(TypeAdapter<T> delegate, TypeAdapter<?> keyAdapter, TypeAdapter<?> valueAdapter, boolean stringKey) {
+            this.delegate = delegate;
+            this.keyAdapter = keyAdapter;
+            this.valueAdapter = valueAdapter;
+            this.stringKey = stringKey;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T read(JsonReader in) throws IOException {
+            if (!(in instanceof BinaryReader) || in.peek() != JsonToken.BEGIN_OBJECT) {
+                return delegate.read(in);
+            }
+            //借用默认的 adapter 创建对应类型的空Map
+            T result = delegate.fromJsonTree(new JsonObject());
+            Map<Object, Object> map = (Map<Object, Object>) result;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                Object key = stringKey ? name : keyAdapter.fromJsonTree(new JsonPrimitive(name));
+                map.put(key, valueAdapter.read(in));
+            }
+            in.endObject();
+            return result;
+        }
+    }
+
+    private static final class BinaryWriter extends JsonWriter {
+        private static final Writer UNWRITABLE = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int counter) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public void flush() {
+                throw new AssertionError();
+            }
+
+            @Override
+            public void close() {
+                throw new AssertionError();
+            }
+        };
+
+        final Output out = new Output(256);
+        private final Map<String, Integer> names = new HashMap<>();
+        private String deferredName;
+
+        BinaryWriter() {
+            super(UNWRITABLE);
+        }
+
+        @Override
+        public JsonWriter beginArray() {
+            writeDeferredName();
+            out.write(TAG_BEGIN_ARRAY);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() {
+            out.write(TAG_END);
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() {
+            writeDeferredName();
+            out.write(TAG_BEGIN_OBJECT);
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() {
+            out.write(TAG_END);
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) {
+            if (name == null) {
+                throw new NullPointerException("name == null");
+            }
+            deferredName = name;
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(String value) {
+            if (value == null) {
+                return nullValue();
+            }
+            writeDeferredName();
+            out.write(TAG_STRING);
+            out.writeString(value);
+            return this;
+        }
+
+        /**
+         * 原样的json文本按结构拆成对应的标记写入，读取时和普通的值没有区别
+         */
+        @Override
+        public JsonWriter jsonValue(String value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            JsonReader reader = new JsonReader(new StringReader(value));
+            reader.setLenient(true);
+            int depth = 0;
+            do {
+                switch (reader.peek()) {
+                    case BEGIN_ARRAY:
+                        reader.beginArray();
+                        beginArray();
+                        depth++;
+                        break;
+                    case END_ARRAY:
+                        reader.endArray();
+                        endArray();
+                        depth--;
+                        break;
+                    case BEGIN_OBJECT:
+                        reader.beginObject();
+                        beginObject();
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                        reader.endObject();
+                        endObject();
+                        depth--;
+                        break;
+                    case NAME:
+                        name(reader.nextName());
+                        break;
+                    case STRING:
+                        value(reader.nextString());
+                        break;
+                    case NUMBER:
+                        //保留原来的数字文本
+                        number(reader.nextString());
+                        break;
+                    case BOOLEAN:
+                        value(reader.nextBoolean());
+                        break;
+                    case NULL:
+                        reader.nextNull();
+                        nullValue();
+                        break;
+                    default:
+                        throw new IOException("Incomplete json value: " + value);
+                }
+            } while (depth > 0);
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() {
+            if (deferredName != null) {
+                if (!getSerializeNulls()) {
+                    //和 JsonWriter 一样，不输出值为null的字段
+                    deferredName = null;
+                    return this;
+                }
+                writeDeferredName();
+            }
+            out.write(TAG_NULL);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) {
+            writeDeferredName();
+            out.write(value ? TAG_TRUE : TAG_FALSE);
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Boolean value) {
+            return value == null ? nullValue() : value(value.booleanValue());
+        }
+
+        @Override
+        public JsonWriter value(double value) {
+            writeDeferredName();
+            out.write(TAG_DOUBLE);
+            out.writeLong(Double.doubleToLongBits(value));
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) {
+            writeDeferredName();
+            out.write(TAG_INT);
+            out.writeVarLong(zigzag(value));
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) {
+            if (value == null) {
+                return nullValue();
+            }
+            if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte) {
+                return value(value.longValue());
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return value(value.doubleValue());
+            }
+            if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+                return value(value.longValue());
+            }
+            return number(value.toString());
+        }
+
+        private JsonWriter number(String value) {
+            writeDeferredName();
+            out.write(TAG_NUMBER);
+            out.writeString(value);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void writeDeferredName() {
+            if (deferredName == null) {
+                return;
+            }
+            Integer index = names.get(deferredName);
+            if (index == null) {
+                names.put(deferredName, names.size());
+                out.write(TAG_NAME);
+                out.writeString(deferredName);
+            } else {
+                out.write(TAG_NAME_REF);
+                out.writeVarint(index);
+            }
+            deferredName = null;
+        }
+    }
+
+    private static final class BinaryReader extends JsonReader {
+        private static final Reader UNREADABLE = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int count) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public void close() {
+                throw new AssertionError();
+            }
+        };
+
+        private final Input in;
+        private final List<String> names = new ArrayList<>();
+        //true 为对象，false 为数组
+        private boolean[] stack = new boolean[32];
+        private int depth;
+
+        BinaryReader(Input in) {
+            super(UNREADABLE);
+            this.in = in;
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            expect(TAG_BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+            push(false);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            if (depth == 0 || stack[depth - 1]) {
+                throw unexpected(JsonToken.END_ARRAY);
+            }
+            expect(TAG_END, JsonToken.END_ARRAY);
+            depth--;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            expect(TAG_BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+            push(true);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            if (depth == 0 || !stack[depth - 1]) {
+                throw unexpected(JsonToken.END_OBJECT);
+            }
+            expect(TAG_END, JsonToken.END_OBJECT);
+            depth--;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            JsonToken token = peek();
+            return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY
+                    && token != JsonToken.END_DOCUMENT;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            if (!in.hasRemaining()) {
+                return JsonToken.END_DOCUMENT;
+            }
+            switch (in.peek()) {
+                case TAG_NULL:
+                    return JsonToken.NULL;
+                case TAG_TRUE:
+                case TAG_FALSE:
+                    return JsonToken.BOOLEAN;
+                case TAG_INT:
+                case TAG_DOUBLE:
+                case TAG_NUMBER:
+                    return JsonToken.NUMBER;
+                case TAG_STRING:
+                    return JsonToken.STRING;
+                case TAG_BEGIN_ARRAY:
+                    return JsonToken.BEGIN_ARRAY;
+                case TAG_BEGIN_OBJECT:
+                    return JsonToken.BEGIN_OBJECT;
+                case TAG_END:
+                    return depth > 0 && stack[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+                case TAG_NAME:
+                case TAG_NAME_REF:
+                    return JsonToken.NAME;
+                default:
+                    throw new IOException("Unknown tag " + in.peek() + " at " + in.position);
+            }
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            int tag = in.read();
+            if (tag == TAG_NAME) {
+                String name = in.readString();
+                names.add(name);
+                return name;
+            }
+            if (tag == TAG_NAME_REF) {
+                int index = in.readVarint();
+                if (index >= names.size()) {
+                    throw new IOException("Bad name index " + index);
+                }
+                return names.get(index);
+            }
+            in.position--;
+            throw unexpected(JsonToken.NAME);
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            int tag = in.read();
+            switch (tag) {
+                case TAG_STRING:
+                case TAG_NUMBER:
+                    return in.readString();
+                case TAG_INT:
+                    return Long.toString(unzigzag(in.readVarLong()));
+                case TAG_DOUBLE:
+                    return Double.toString(Double.longBitsToDouble(in.readLong()));
+                default:
+                    in.position--;
+                    throw unexpected(JsonToken.STRING);
+            }
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            int tag = in.read();
+            if (tag == TAG_TRUE) {
+                return true;
+            }
+            if (tag == TAG_FALSE) {
+                return false;
+            }
+            in.position--;
+            throw unexpected(JsonToken.BOOLEAN);
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            expect(TAG_NULL, JsonToken.NULL);
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            int tag = in.read();
+            switch (tag) {
+                case TAG_DOUBLE:
+                    return Double.longBitsToDouble(in.readLong());
+                case TAG_INT:
+                    return unzigzag(in.readVarLong());
+                case TAG_STRING:
+                case TAG_NUMBER:
+                    return parseDouble(in.readString());
+                default:
+                    in.position--;
+                    throw unexpected(JsonToken.NUMBER);
+            }
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            int tag = in.read();
+            switch (tag) {
+                case TAG_INT:
+                    return unzigzag(in.readVarLong());
+                case TAG_DOUBLE:
+                    return toLong(Double.longBitsToDouble(in.readLong()));
+                case TAG_STRING:
+                case TAG_NUMBER:
+                    return parseLong(in.readString());
+                default:
+                    in.position--;
+                    throw unexpected(JsonToken.NUMBER);
+            }
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            long value = nextLong();
+            if ((int) value != value) {
+                throw new NumberFormatException("Expected an int but was " + value);
+            }
+            return (int) value;
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            int count = 0;
+            do {
+                int tag = in.read();
+                switch (tag) {
+                    case TAG_BEGIN_ARRAY:
+                    case TAG_BEGIN_OBJECT:
+                        count++;
+                        break;
+                    case TAG_END:
+                        count--;
+                        break;
+                    case TAG_NAME:
+                        //名字表要保持完整，后面的序号会引用它
+                        names.add(in.readString());
+                        //单独跳过字段名时不再跳过它的值
+                        if (count == 0) {
+                            return;
+                        }
+                        break;
+                    case TAG_NAME_REF:
+                        in.readVarint();
+                        if (count == 0) {
+                            return;
+                        }
+                        break;
+                    case TAG_INT:
+                        in.readVarLong();
+                        break;
+                    case TAG_DOUBLE:
+                        in.readLong();
+                        break;
+                    case TAG_STRING:
+                    case TAG_NUMBER:
+                        in.skip(in.readVarint());
+                        break;
+                    case TAG_NULL:
+                    case TAG_TRUE:
+                    case TAG_FALSE:
+                        break;
+                    default:
+                        throw new IOException("Unknown tag " + tag + " at " + (in.position - 1));
+                }
+            } while (count > 0);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getPath() {
+            return "$";
+        }
+
+        @Override
+        public String toString() {
+            return "BinaryReader at " + in.position;
+        }
+
+        private void push(boolean object) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = object;
+        }
+
+        private void expect(int tag, JsonToken token) throws IOException {
+            if (in.read() != tag) {
+                in.position--;
+                throw unexpected(token);
+            }
+        }
+
+        private IllegalStateException unexpected(JsonToken expected) throws IOException {
+            return new IllegalStateException("Expected " + expected + " but was " + peek() + " at " + in.position);
+        }
+
+        private static double parseDouble(String value) {
+            return Double.parseDouble(value);
+        }
+
+        private static long parseLong(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return toLong(Double.parseDouble(value));
+            }
+        }
+
+        private static long toLong(double value) {
+            long result = (long) value;
+            if (result != value) {
+                throw new NumberFormatException("Expected a long but was " + value);
+            }
+            return result;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] deflate(byte[] data, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            Output out = new Output(length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] result = new byte[rawLength];
+            int count = 0;
+            while (count < rawLength) {
+                int read = inflater.inflate(result, count, rawLength - count);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                count += read;
+            }
+            if (count != rawLength) {
+                throw new EOFException("Inflated " + count + " of " + rawLength + " bytes");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output {
+        byte[] bytes;
+        int size;
+
+        Output(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] data, int offset, int length) {
+            ensure(length);
+            System.arraycopy(data, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarint(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                bytes[size++] = (byte) (value >>> i);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(UTF_8);
+            writeVarint(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private final int limit;
+        int position;
+
+        Input(byte[] bytes, int offset, int limit) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        boolean hasRemaining() {
+            return position < limit;
+        }
+
+        int peek() {
+            return bytes[position] & 0xFF;
+        }
+
+        int read() throws IOException {
+            if (position >= limit) {
+                throw new EOFException();
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        void skip(int count) throws IOException {
+            if (count > limit - position) {
+                throw new EOFException();
+            }
+            position += count;
+        }
+
+        int readVarint() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Bad varint " + value);
+            }
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length > limit - position) {
+                throw new EOFException();
+            }
+            String value = new String(bytes, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
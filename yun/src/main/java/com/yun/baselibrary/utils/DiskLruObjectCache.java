@@ -0,0 +1,309 @@
+package com.yun.baselibrary.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Desc SerializeTools 的磁盘LRU缓存，每个key一个文件，
+ * 文件大小和访问顺序记在日志文件中，统计大小不需要遍历目录，写入超出上限时淘汰最久没用的
+ * 日志格式：每行 "PUT 大小 key"、"GET key" 或 "DEL key"
+ */
+final class DiskLruObjectCache {
+    private static final String MAGIC = "SerializeTools.DiskLruObjectCache";
+    private static final String VERSION = "1";
+    private static final String PUT = "PUT";
+    private static final String GET = "GET";
+    private static final String DEL = "DEL";
+    //日志中无用的记录超过这个数量并且多于有效记录时重写日志
+    private static final int REBUILD_THRESHOLD = 2000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final File journalFile;
+    private final File journalFileTmp;
+    private long maxSize;
+    private long size;
+    private int redundantOpCount;
+    private Writer journalWriter;
+    //按访问顺序排列，最前面的是最久没用的
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param directory 缓存文件所在目录，日志文件放在同级目录
+     * @param maxSize   缓存文件的总大小上限
+     */
+    DiskLruObjectCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.journalFile = new File(directory.getParentFile(), directory.getName() + ".journal");
+        this.journalFileTmp = new File(directory.getParentFile(), directory.getName() + ".journal.tmp");
+        this.maxSize = maxSize;
+        open();
+    }
+
+    private void open() {
+        directory.mkdirs();
+        if (journalFile.exists()) {
+            try {
+                readJournal();
+                journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8));
+                deleteTempFiles();
+                return;
+            } catch (IOException e) {
+                ExtensionKt.logE("DiskLruObjectCache 日志读取失败，清空缓存 " + e);
+            }
+        }
+        //没有日志或日志损坏时无法知道哪些文件有效，清空后重新开始
+        deleteContents(directory);
+        entries.clear();
+        size = 0;
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            ExtensionKt.logE("DiskLruObjectCache 日志重建失败 " + e);
+        }
+    }
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF_8));
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                throw new IOException("unexpected journal header");
+            }
+            int lineCount = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                readJournalLine(line);
+            }
+            redundantOpCount = lineCount - entries.size();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readJournalLine(String line) {
+        //崩溃时最后一行可能不完整，格式不对的行直接忽略
+        int space = line.indexOf(' ');
+        if (space < 0) {
+            return;
+        }
+        String op = line.substring(0, space);
+        if (PUT.equals(op)) {
+            int next = line.indexOf(' ', space + 1);
+            if (next < 0) {
+                return;
+            }
+            long length;
+            try {
+                length = Long.parseLong(line.substring(space + 1, next));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            Long old = entries.put(line.substring(next + 1), length);
+            size += length - (old == null ? 0 : old);
+        } else if (GET.equals(op)) {
+            entries.get(line.substring(space + 1));
+        } else if (DEL.equals(op)) {
+            Long old = entries.remove(line.substring(space + 1));
+            if (old != null) {
+                size -= old;
+            }
+        }
+    }
+
+    /**
+     * 按当前有效的记录重写日志
+     */
+    private void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTmp), UTF_8));
+        try {
+            writer.write(MAGIC + "\n" + VERSION + "\n");
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(PUT + ' ' + entry.getValue() + ' ' + entry.getKey() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!journalFileTmp.renameTo(journalFile)) {
+            journalFile.delete();
+            if (!journalFileTmp.renameTo(journalFile)) {
+                throw new IOException("rename journal failed");
+            }
+        }
+        redundantOpCount = 0;
+        journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8));
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param key
+     * @return 没有缓存或文件已损坏时返回null
+     */
+    Object get(String key) {
+        synchronized (this) {
+            if (!entries.containsKey(key)) {
+                return null;
+            }
+            entries.get(key);
+            //访问记录不需要马上落盘，丢了只影响淘汰顺序
+            journal(GET + ' ' + key, false);
+        }
+        Object obj = ObjectFileStore.read(new File(directory, key));
+        if (obj == null) {
+            remove(key);
+        }
+        return obj;
+    }
+
+    /**
+     * 写入缓存，超出上限时淘汰最久没用的
+     *
+     * @param key
+     * @param obj
+     * @throws IOException
+     */
+    synchronized void put(String key, Object obj) throws IOException {
+        //写文件也在锁内，避免写完之前被 remove/trimToSize 删掉的文件又出现，而记录已经没有了
+        long length = ObjectFileStore.write(new File(directory, key), obj);
+        Long old = entries.put(key, length);
+        size += length - (old == null ? 0 : old);
+        journal(PUT + ' ' + length + ' ' + key, true);
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key
+     * @return
+     */
+    synchronized boolean remove(String key) {
+        Long old = entries.remove(key);
+        if (old == null) {
+            return false;
+        }
+        new File(directory, key).delete();
+        size -= old;
+        journal(DEL + ' ' + key, true);
+        return true;
+    }
+
+    synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 淘汰最久没用的缓存，直到总大小不超过 maxSize
+     *
+     * @param maxSize
+     */
+    synchronized void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            journal(DEL + ' ' + eldest.getKey(), false);
+        }
+        flushJournal();
+    }
+
+    /**
+     * 删除全部缓存
+     */
+    synchronized void clear() {
+        deleteContents(directory);
+        entries.clear();
+        size = 0;
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            ExtensionKt.logE("DiskLruObjectCache 日志重建失败 " + e);
+        }
+    }
+
+    private void journal(String line, boolean flush) {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.write(line);
+            journalWriter.write('\n');
+            redundantOpCount++;
+            if (redundantOpCount >= REBUILD_THRESHOLD && redundantOpCount >= entries.size()) {
+                rebuildJournal();
+            } else if (flush) {
+                journalWriter.flush();
+            }
+        } catch (IOException e) {
+            ExtensionKt.logE("DiskLruObjectCache 日志写入失败 " + e);
+        }
+    }
+
+    private void flushJournal() {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.flush();
+        } catch (IOException e) {
+            ExtensionKt.logE("DiskLruObjectCache 日志写入失败 " + e);
+        }
+    }
+
+    /**
+     * 删除写入过程中崩溃留下的临时文件
+     */
+    private void deleteTempFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!entries.containsKey(file.getName()) && file.getName().endsWith(ObjectFileStore.TEMP_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void deleteContents(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -4,6 +4,8 @@ import android.app.Activity
 import android.content.Context
 import android.content.Intent
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
 import android.text.*
 import android.text.style.AbsoluteSizeSpan
 import android.view.View
@@ -15,8 +17,12 @@ import com.yun.baselibrary.http.ExceptionHandle
 import com.orhanobut.logger.Logger
 import kotlinx.coroutines.CoroutineExceptionHandler
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.launch
 import java.lang.reflect.Type
+import java.util.concurrent.atomic.AtomicBoolean
 
 fun logV(message: String) {
     Logger.v(message)
@@ -151,3 +157,67 @@ fun ViewModel.launchTest(
         }
     }
 }
+
+/**
+ * MMKVUtils 批量写入，block 中的写入一起生效
+ * @param commit true 时在当前线程写完再返回，否则在后台线程写入
+ */
+inline fun MMKVUtils.edit(commit: Boolean = false, block: MMKVUtils.Editor.() -> Unit) {
+    val editor = edit()
+    editor.block()
+    if (commit) editor.commit() else editor.apply()
+}
+
+/**
+ * key的值变化时发出新值，开始收集时先发出当前值，只能收到通过 MMKVUtils 的写入
+ * 连续多次写入只发出最新的值，只在收集时调用 read 读取
+ * 例：mmkv.keyFlow("unread") { getInt(it, 0) }
+ */
+fun <T> MMKVUtils.keyFlow(name: String, read: MMKVUtils.(String) -> T): Flow<T> = flow {
+    //不用 callbackFlow，它在当前的协程版本中还是实验性的
+    val changes = Channel<Unit>(Channel.CONFLATED)
+    val listener = MMKVUtils.OnKeyChangeListener { changes.offer(Unit) }
+    addOnKeyChangeListener(name, listener)
+    try {
+        changes.offer(Unit)
+        for (change in changes) {
+            emit(read(name))
+        }
+    } finally {
+        removeOnKeyChangeListener(name, listener)
+    }
+}
+
+/**
+ * 和 [keyFlow] 一样，有活跃的观察者时才读取，在主线程更新
+ */
+fun <T> MMKVUtils.keyLiveData(name: String, read: MMKVUtils.(String) -> T): LiveData<T> =
+    KeyLiveData(this, name, read)
+
+private class KeyLiveData<T>(
+    private val utils: MMKVUtils,
+    private val name: String,
+    private val read: MMKVUtils.(String) -> T
+) : LiveData<T>(), MMKVUtils.OnKeyChangeListener {
+    private val handler = Handler(Looper.getMainLooper())
+    //已经安排了更新，期间的多次写入合并成一次
+    private val dirty = AtomicBoolean()
+    private val update = Runnable {
+        dirty.set(false)
+        if (hasActiveObservers()) value = utils.read(name)
+    }
+
+    override fun onActive() {
+        utils.addOnKeyChangeListener(name, this)
+        //不活跃期间的写入没有通知，重新读一次
+        update.run()
+    }
+
+    override fun onInactive() {
+        utils.removeOnKeyChangeListener(name, this)
+    }
+
+    override fun onKeyChanged(name: String) {
+        if (dirty.compareAndSet(false, true)) handler.post(update)
+    }
+}
@@ -0,0 +1,81 @@
+package com.yun.baselibrary.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Desc MMKVUtils 共用的 Gson 和 TypeAdapter，不再每次读写都创建 Gson、重新反射解析类型
+ */
+final class JsonCodecs {
+    private static volatile Gson gson = new Gson();
+    private static final ConcurrentHashMap<Type, TypeAdapter<?>> ADAPTERS = new ConcurrentHashMap<>();
+
+    private JsonCodecs() {
+    }
+
+    static Gson gson() {
+        return gson;
+    }
+
+    /**
+     * 替换使用的 Gson，已缓存的 TypeAdapter 一并清空
+     *
+     * @param newGson
+     */
+    static synchronized void setGson(Gson newGson) {
+        gson = newGson;
+        ADAPTERS.clear();
+    }
+
+    /**
+     * 获取缓存的 TypeAdapter
+     *
+     * @param type
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <T> TypeAdapter<T> adapter(Type type) {
+        TypeAdapter<?> adapter = ADAPTERS.get(type);
+        if (adapter == null) {
+            Gson current = gson;
+            adapter = current.getAdapter(TypeToken.get(type));
+            synchronized (JsonCodecs.class) {
+                //期间 Gson 被替换了就不缓存旧的 adapter
+                if (current == gson) {
+                    ADAPTERS.put(type, adapter);
+                }
+            }
+        }
+        return (TypeAdapter<T>) adapter;
+    }
+
+    /**
+     * 和 Gson.fromJson 一样使用宽松模式解析
+     *
+     * @param json
+     * @param type
+     * @param <T>
+     * @return json 为 null 或空白时和 Gson.fromJson 一样返回 null
+     * @throws IOException
+     */
+    static <T> T fromJson(String json, Type type) throws IOException {
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        return JsonCodecs.<T>adapter(type).read(reader);
+    }
+
+    static String toJson(Object value) {
+        return gson.toJson(value);
+    }
+}
@@ -0,0 +1,192 @@
+package com.yun.baselibrary.utils;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.StringReader;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * @Desc json数组的只读懒加载视图，创建时只扫描一遍找出每个元素的位置，
+ * 访问到哪一页才解析哪一页，解析过的元素会保留
+ */
+final class LazyJsonList<T> extends AbstractList<T> implements RandomAccess {
+    private final String json;
+    private final TypeAdapter<T> adapter;
+    private final int pageSize;
+    //第i个元素在json中的范围为[starts[i], ends[i])
+    private final int[] starts;
+    private final int[] ends;
+    private final Object[] elements;
+    private final boolean[] loadedPages;
+
+    private LazyJsonList(String json, TypeAdapter<T> adapter, int pageSize, int[] starts, int[] ends) {
+        this.json = json;
+        this.adapter = adapter;
+        this.pageSize = pageSize;
+        this.starts = starts;
+        this.ends = ends;
+        this.elements = new Object[starts.length];
+        this.loadedPages = new boolean[(starts.length + pageSize - 1) / pageSize];
+    }
+
+    /**
+     * @param json     json数组
+     * @param adapter  元素的 TypeAdapter
+     * @param pageSize 每次解析的元素个数
+     * @return json 不是合法的数组时返回 null
+     */
+    static <T> LazyJsonList<T> of(String json, TypeAdapter<T> adapter, int pageSize) {
+        if (json == null) {
+            return null;
+        }
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count = 0;
+        int length = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= length || json.charAt(i) != '[') {
+            return null;
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < length && json.charAt(i) == ']') {
+            return trailingOnly(json, i + 1) ? new LazyJsonList<>(json, adapter, Math.max(1, pageSize), new int[0], new int[0]) : null;
+        }
+        while (i < length) {
+            int end = scanValue(json, i);
+            if (end < 0) {
+                return null;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = i;
+            ends[count] = end;
+            count++;
+            i = skipWhitespace(json, end);
+            if (i >= length) {
+                return null;
+            }
+            char c = json.charAt(i);
+            if (c == ']') {
+                if (!trailingOnly(json, i + 1)) {
+                    return null;
+                }
+                return new LazyJsonList<>(json, adapter, Math.max(1, pageSize),
+                        Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+            }
+            if (c != ',') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(int index) {
+        if (index < 0 || index >= elements.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.length);
+        }
+        int page = index / pageSize;
+        if (!loadedPages[page]) {
+            int from = page * pageSize;
+            int to = Math.min(elements.length, from + pageSize);
+            for (int i = from; i < to; i++) {
+                elements[i] = decode(i);
+            }
+            loadedPages[page] = true;
+        }
+        return (T) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    private T decode(int index) {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json.substring(starts[index], ends[index])));
+            reader.setLenient(true);
+            return adapter.read(reader);
+        } catch (Exception e) {
+            ExtensionKt.logE("LazyJsonList 第" + index + "个元素解析失败 " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 找到从 start 开始的一个json值的结束位置，只区分字符串和括号层级
+     *
+     * @return 值结束后的位置，格式不对时返回-1
+     */
+    private static int scanValue(String json, int start) {
+        int depth = 0;
+        int length = json.length();
+        for (int i = start; i < length; i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                i = skipString(json, i + 1);
+                if (i < 0) {
+                    return -1;
+                }
+                if (depth == 0) {
+                    return i + 1;
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    //数字、true等标量直接遇到了数组结尾
+                    return i == start ? -1 : i;
+                }
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            } else if (depth == 0 && (c == ',' || isWhitespace(c))) {
+                return i == start ? -1 : i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 字符串结束引号的位置，没有结束时返回-1
+     */
+    private static int skipString(String json, int i) {
+        int length = json.length();
+        while (i < length) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean trailingOnly(String json, int i) {
+        return skipWhitespace(json, i) == json.length();
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        int length = json.length();
+        while (i < length && isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
@@ -0,0 +1,202 @@
+package com.yun.baselibrary.utils;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.OnLifecycleEvent;
+import androidx.lifecycle.ProcessLifecycleOwner;
+
+import com.tencent.mmkv.MMKV;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @Desc MMKVUtils 文件的状态统计和整理
+ * mmkv 只追加写入，文件会越来越大，应用切到后台或开始充电时检查各个文件，
+ * 浪费的空间超过阈值时调用 trim 整理
+ */
+public final class MMKVMaintenance {
+    //切到后台后等一会再检查，避免马上又回到前台
+    private static final long IDLE_DELAY_MS = 5 * 1000;
+    //两次检查的最小间隔
+    private static final long MIN_INTERVAL_MS = 30 * 60 * 1000;
+    private static final int LARGEST_KEY_COUNT = 5;
+
+    private static volatile float wastedRatio = 0.5f;
+    private static volatile long minWastedBytes = 1024 * 1024;
+    private static volatile long lastRun;
+    private static boolean installed;
+
+    private MMKVMaintenance() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 单个文件的统计
+     */
+    public static final class Stats {
+        public final String id;
+        //文件大小
+        public final long totalSize;
+        //有效数据大小
+        public final long actualSize;
+        public final long keyCount;
+        //占用最大的几个key及大小，从大到小
+        public final List<KeySize> largestKeys;
+
+        Stats(String id, long totalSize, long actualSize, long keyCount, List<KeySize> largestKeys) {
+            this.id = id;
+            this.totalSize = totalSize;
+            this.actualSize = actualSize;
+            this.keyCount = keyCount;
+            this.largestKeys = largestKeys;
+        }
+
+        public long wastedSize() {
+            return Math.max(0, totalSize - actualSize);
+        }
+
+        @Override
+        public String toString() {
+            return "MMKV[" + id + "] total=" + totalSize + " actual=" + actualSize
+                    + " wasted=" + wastedSize() + " keys=" + keyCount + " largest=" + largestKeys;
+        }
+    }
+
+    public static final class KeySize {
+        public final String key;
+        public final int size;
+
+        KeySize(String key, int size) {
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + size;
+        }
+    }
+
+    /**
+     * 设置整理的阈值，浪费的空间同时超过比例和大小时整理
+     *
+     * @param ratio    浪费的空间占文件大小的比例
+     * @param minBytes 浪费的空间最少多少字节
+     */
+    public static void setCompactThreshold(float ratio, long minBytes) {
+        wastedRatio = ratio;
+        minWastedBytes = minBytes;
+    }
+
+    /**
+     * 当前已经创建的所有实例的统计，会遍历所有key读取大小，不要在主线程频繁调用
+     *
+     * @return
+     */
+    public static List<Stats> snapshot() {
+        List<Stats> list = new ArrayList<>();
+        for (MMKVUtils utils : MMKVUtils.instances()) {
+            list.add(stats(utils.mmkv()));
+        }
+        return list;
+    }
+
+    private static Stats stats(MMKV mmkv) {
+        PriorityQueue<KeySize> largest = new PriorityQueue<>(LARGEST_KEY_COUNT + 1, new Comparator<KeySize>() {
+            @Override
+            public int compare(KeySize o1, KeySize o2) {
+                return o1.size - o2.size;
+            }
+        });
+        String[] keys = mmkv.allKeys();
+        if (keys != null) {
+            for (String key : keys) {
+                largest.add(new KeySize(key, mmkv.getValueSize(key)));
+                if (largest.size() > LARGEST_KEY_COUNT) {
+                    largest.poll();
+                }
+            }
+        }
+        List<KeySize> sorted = new ArrayList<>(largest);
+        Collections.sort(sorted, Collections.reverseOrder(largest.comparator()));
+        return new Stats(mmkv.mmapID(), mmkv.totalSize(), mmkv.actualSize(), mmkv.count(), sorted);
+    }
+
+    /**
+     * 在写入线程检查所有实例，浪费的空间超过阈值的整理
+     *
+     * @param force 为 true 时不受最小间隔限制
+     */
+    public static void compactIfNeeded(final boolean force) {
+        MMKVUtils.executeOnWriter(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                if (!force && now - lastRun < MIN_INTERVAL_MS) {
+                    return;
+                }
+                lastRun = now;
+                for (MMKVUtils utils : MMKVUtils.instances()) {
+                    try {
+                        MMKV mmkv = utils.mmkv();
+                        long wasted = mmkv.totalSize() - mmkv.actualSize();
+                        if (wasted >= minWastedBytes && wasted >= mmkv.totalSize() * wastedRatio) {
+                            utils.trim();
+                        }
+                    } catch (Exception e) {
+                        ExtensionKt.logE("MMKVMaintenance 整理 " + utils.mmkv().mmapID() + " 失败 " + e);
+                    }
+                }
+            }
+        }, 0);
+    }
+
+    /**
+     * 应用切到后台，或在后台时开始充电，自动整理，MMKVUtils.init 中调用
+     */
+    static synchronized void install(Application application) {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        ProcessLifecycleOwner.get().getLifecycle().addObserver(new IdleObserver());
+        application.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                compactIfIdle(0);
+            }
+        }, new IntentFilter(Intent.ACTION_POWER_CONNECTED));
+    }
+
+    /**
+     * 应用在后台时才整理，trim 会持有写锁，不能在前台卡住读写
+     */
+    private static void compactIfIdle(long delayMs) {
+        MMKVUtils.executeOnWriter(new Runnable() {
+            @Override
+            public void run() {
+                //已经回到前台就不整理了
+                if (!ProcessLifecycleOwner.get().getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                    compactIfNeeded(false);
+                }
+            }
+        }, delayMs);
+    }
+
+    private static final class IdleObserver implements LifecycleObserver {
+        @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+        void onStop() {
+            compactIfIdle(IDLE_DELAY_MS);
+        }
+    }
+}
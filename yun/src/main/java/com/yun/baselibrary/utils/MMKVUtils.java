@@ -4,18 +4,40 @@ import android.app.Application;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
-import androidx.collection.SimpleArrayMap;
+import androidx.collection.LruCache;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.OnLifecycleEvent;
+import androidx.lifecycle.ProcessLifecycleOwner;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.tencent.mmkv.BuildConfig;
 import com.tencent.mmkv.MMKV;
 import com.tencent.mmkv.MMKVLogLevel;
 
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @Author: HOU
@@ -25,14 +47,65 @@ import java.util.List;
 public class MMKVUtils {
     public static final String DEFAULT_FILE_NAME = "/MMKV_FILE";
     private MMKV mmkv;
-    //保留Name与PersistUtil的映射
-    private static SimpleArrayMap<String, MMKVUtils> PERSIST_UTILS_MAP = new SimpleArrayMap<>();
+    //保留Name与PersistUtil的映射，每个Name只创建一次
+    private static final ConcurrentHashMap<String, Holder> PERSIST_UTILS_MAP = new ConcurrentHashMap<>();
+    //解码后的对象缓存，默认不开启
+    private volatile LruCache<String, Decoded> decodedCache;
+    //每次写入加一，解码期间有写入时解码结果不放进缓存
+    private long writeVersion;
+    //已经提交但还没写进mmkv的值，读取时优先使用，整体替换保证读到的是完整的一批
+    private volatile Map<String, Pending> pending = Collections.emptyMap();
+    //写mmkv和更新pending时持有
+    private final Object writeLock = new Object();
+    private static final Object NO_PENDING = new Object();
+    private static final Object REMOVED = new Object();
+    //异步写入时 putObject 只记录最新值，延迟这么久后在后台统一写入，期间同一个key的多次写入只序列化一次
+    private static final long ASYNC_WRITE_DELAY_MS = 100;
+    //是否异步写入对象
+    private volatile boolean asyncWrite;
+    //对象的二进制编码，为空时保存json文本
+    private volatile ObjectCodec objectCodec;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    //有未写入数据的实例，切到后台时统一写入
+    private static final Map<MMKVUtils, Boolean> DIRTY = new ConcurrentHashMap<>();
+    //过期时间索引保存在单独的mmkv文件中，这个key标记当前文件有带过期时间的值
+    private static final String TTL_MARKER = "__mmkvutils_ttl";
+    private static final String TTL_SUFFIX = ".ttl";
+    //后台清理过期key的最小间隔和每次最多清理的数量
+    private static final long SWEEP_INTERVAL_MS = 60 * 1000;
+    private static final int SWEEP_BATCH = 64;
+    private final int mode;
+    //key -> 过期时间，第一次用到时加载
+    private volatile Map<String, Long> expiries;
+    private MMKV ttlIndex;
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+    //超过这个大小的对象保存到单独的文件，mmkv 中只保存文件名
+    private static final int DEFAULT_SPILL_THRESHOLD = 256 * 1024;
+    //启动后延迟清理没有被引用的文件，只清理修改时间早于 SPILL_GC_MIN_AGE_MS 的
+    private static final long SPILL_GC_DELAY_MS = 10 * 1000;
+    private static final long SPILL_GC_MIN_AGE_MS = 10 * 60 * 1000;
+    private static volatile File spillRoot;
+    private volatile int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private volatile SpillStore spillStore;
+    //key -> 值变化的监听
+    private final Map<String, CopyOnWriteArrayList<OnKeyChangeListener>> keyListeners = new ConcurrentHashMap<>();
+    //批量和异步写入的后台线程，所有文件共用
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "MMKVUtils-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     /**
      * @param fileName 文件名
      */
     private MMKVUtils(String fileName) {
         mmkv = MMKV.mmkvWithID(fileName);
+        mode = MMKV.SINGLE_PROCESS_MODE;
+        scheduleSpillGc();
     }
 
     /**
@@ -41,6 +114,8 @@ public class MMKVUtils {
      */
     private MMKVUtils(String fileName, int multi) {
         mmkv = MMKV.mmkvWithID(fileName, MMKV.MULTI_PROCESS_MODE);
+        mode = MMKV.MULTI_PROCESS_MODE;
+        scheduleSpillGc();
     }
 
     /**
@@ -50,7 +125,24 @@ public class MMKVUtils {
      * @param value
      */
     public void putObject(String name, Object value) {
-        mmkv.encode(name, toJsonString(value));
+        if (asyncWrite) {
+            Map<String, Object> values = new HashMap<>(1);
+            values.put(name, pendingObject(value));
+            applyBatch(values, ASYNC_WRITE_DELAY_MS);
+            return;
+        }
+        write(name, pendingObject(value));
+    }
+
+    /**
+     * 保存对象，超过有效期后读取时返回默认值，带有效期的写入不走异步写入
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putObject(String name, Object value, long ttlMillis) {
+        write(name, pendingObject(value), ttlMillis);
     }
 
     /**
@@ -60,7 +152,18 @@ public class MMKVUtils {
      * @param value
      */
     public void putString(String name, String value) {
-        mmkv.encode(name, value);
+        write(name, value);
+    }
+
+    /**
+     * 保存字符串，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putString(String name, String value, long ttlMillis) {
+        write(name, value, ttlMillis);
     }
 
 
@@ -71,7 +174,20 @@ public class MMKVUtils {
      * @param defaultValue
      */
     public String getString(String name, @NonNull String defaultValue) {
-        return mmkv.decodeString(name, defaultValue);
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return pendingString(value, defaultValue);
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
+        String result = mmkv.decodeString(name, defaultValue);
+        if (SpillStore.isPointer(result)) {
+            SpillStore store = spillStore();
+            String spilled = store == null ? null : store.readString(result);
+            return spilled != null ? spilled : defaultValue;
+        }
+        return result;
     }
 
     /**
@@ -80,7 +196,7 @@ public class MMKVUtils {
      * @param name
      */
     public String getString(String name) {
-        return mmkv.decodeString(name, "");
+        return getString(name, "");
     }
 
     /**
@@ -90,7 +206,18 @@ public class MMKVUtils {
      * @param value
      */
     public void putBoolean(String name, boolean value) {
-        mmkv.encode(name, value);
+        write(name, value);
+    }
+
+    /**
+     * 保存boolean，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putBoolean(String name, boolean value, long ttlMillis) {
+        write(name, value, ttlMillis);
     }
 
     /**
@@ -100,6 +227,13 @@ public class MMKVUtils {
      * @param defaultValue
      */
     public boolean getBoolean(String name, boolean defaultValue) {
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value instanceof Boolean ? (Boolean) value : defaultValue;
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
         return mmkv.decodeBool(name, defaultValue);
     }
 
@@ -109,7 +243,7 @@ public class MMKVUtils {
      * @param name
      */
     public boolean getBoolean(String name) {
-        return mmkv.decodeBool(name, false);
+        return getBoolean(name, false);
     }
 
     /**
@@ -120,7 +254,18 @@ public class MMKVUtils {
      */
     public void putInt(String name, int value) {
         //编码的时候
-        mmkv.encode(name, value);
+        write(name, value);
+    }
+
+    /**
+     * 保存int，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putInt(String name, int value, long ttlMillis) {
+        write(name, value, ttlMillis);
     }
 
     /**
@@ -130,6 +275,13 @@ public class MMKVUtils {
      * @param defaultValue
      */
     public int getInt(String name, int defaultValue) {
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value instanceof Integer ? (Integer) value : defaultValue;
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
         return mmkv.decodeInt(name, defaultValue);
     }
 
@@ -139,7 +291,7 @@ public class MMKVUtils {
      * @param name
      */
     public int getInt(String name) {
-        return mmkv.decodeInt(name, 0);
+        return getInt(name, 0);
     }
 
     /**
@@ -149,7 +301,18 @@ public class MMKVUtils {
      * @param value
      */
     public void putFloat(String name, float value) {
-        mmkv.encode(name, value);
+        write(name, value);
+    }
+
+    /**
+     * 保存float，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putFloat(String name, float value, long ttlMillis) {
+        write(name, value, ttlMillis);
     }
 
     /**
@@ -159,6 +322,13 @@ public class MMKVUtils {
      * @param defaultValue
      */
     public float getFloat(String name, float defaultValue) {
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value instanceof Float ? (Float) value : defaultValue;
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
         return mmkv.decodeFloat(name, defaultValue);
     }
 
@@ -168,7 +338,7 @@ public class MMKVUtils {
      * @param name
      */
     public float getFloat(String name) {
-        return mmkv.decodeFloat(name, 0f);
+        return getFloat(name, 0f);
     }
 
     /**
@@ -178,7 +348,18 @@ public class MMKVUtils {
      * @param value
      */
     public void putLong(String name, long value) {
-        mmkv.encode(name, value);
+        write(name, value);
+    }
+
+    /**
+     * 保存long，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putLong(String name, long value, long ttlMillis) {
+        write(name, value, ttlMillis);
     }
 
     /**
@@ -187,7 +368,14 @@ public class MMKVUtils {
      * @param name
      * @param defaultValue
      */
-    public float getLong(String name, long defaultValue) {
+    public long getLong(String name, long defaultValue) {
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value instanceof Long ? (Long) value : defaultValue;
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
         return mmkv.decodeLong(name, defaultValue);
     }
 
@@ -197,7 +385,7 @@ public class MMKVUtils {
      * @param name
      */
     public long getLong(String name) {
-        return mmkv.decodeLong(name, 0L);
+        return getLong(name, 0L);
     }
 
     /**
@@ -207,7 +395,18 @@ public class MMKVUtils {
      * @param value
      */
     public void putDouble(String name, double value) {
-        mmkv.encode(name, value);
+        write(name, value);
+    }
+
+    /**
+     * 保存double，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param value
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putDouble(String name, double value, long ttlMillis) {
+        write(name, value, ttlMillis);
     }
 
     /**
@@ -217,6 +416,13 @@ public class MMKVUtils {
      * @param defaultValue
      */
     public double getDouble(String name, double defaultValue) {
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value instanceof Double ? (Double) value : defaultValue;
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
         return mmkv.decodeDouble(name, defaultValue);
     }
 
@@ -226,7 +432,7 @@ public class MMKVUtils {
      * @param name
      */
     public double getDouble(String name) {
-        return mmkv.decodeDouble(name, 0D);
+        return getDouble(name, 0D);
     }
 
     /**
@@ -236,7 +442,18 @@ public class MMKVUtils {
      * @param bytes
      */
     public void putBytes(String name, byte[] bytes) {
-        mmkv.encode(name, bytes);
+        write(name, bytes);
+    }
+
+    /**
+     * 保存byte[]，超过有效期后读取时返回默认值
+     *
+     * @param name
+     * @param bytes
+     * @param ttlMillis 有效期，小于等于0时不过期
+     */
+    public void putBytes(String name, byte[] bytes, long ttlMillis) {
+        write(name, bytes, ttlMillis);
     }
 
     /**
@@ -246,7 +463,7 @@ public class MMKVUtils {
      * @return
      */
     public byte[] getBytes(String name) {
-        return mmkv.decodeBytes(name);
+        return getBytes(name, null);
     }
 
     /**
@@ -257,6 +474,13 @@ public class MMKVUtils {
      * @return
      */
     public byte[] getBytes(String name, byte[] defaultValue) {
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value instanceof byte[] ? ((byte[]) value).clone() : defaultValue;
+        }
+        if (expired(name)) {
+            return defaultValue;
+        }
         return mmkv.decodeBytes(name, defaultValue);
     }
 
@@ -267,8 +491,24 @@ public class MMKVUtils {
      * @param clazz
      */
     public <T> T getObject(String name, Class<T> clazz) {
-        return stringToBean(mmkv.decodeString(name), clazz);
-
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            if (value instanceof PendingObject && clazz.isInstance(((PendingObject) value).value)) {
+                return clazz.cast(((PendingObject) value).value);
+            }
+            return stringToBean(pendingString(value, null), clazz);
+        }
+        if (expired(name)) {
+            return null;
+        }
+        T cached = getDecoded(name, clazz);
+        if (cached != null) {
+            return cached;
+        }
+        long version = currentVersion();
+        T t = readObject(name, clazz);
+        putDecoded(name, clazz, t, version);
+        return t;
     }
 
     /**
@@ -281,7 +521,147 @@ public class MMKVUtils {
      */
     public <T> List<T> getList(String name, Class<T> clazz) {
         //最坏的情况也只是返回一个空的List 不会产生null
-        return stringToList(mmkv.decodeString(name), clazz);
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return stringToList(pendingString(value, null), clazz);
+        }
+        if (expired(name)) {
+            return new ArrayList<>();
+        }
+        Type type = TypeToken.getParameterized(List.class, clazz).getType();
+        List<T> cached = getDecoded(name, type);
+        if (cached != null) {
+            return cached;
+        }
+        long version = currentVersion();
+        List<T> list;
+        String json;
+        if (objectCodec == null && !SpillStore.isPointer(json = mmkv.decodeString(name))) {
+            list = stringToList(json, clazz);
+        } else {
+            list = readObject(name, type);
+            if (list == null) {
+                list = new ArrayList<>();
+            }
+        }
+        if (!list.isEmpty()) {
+            putDecoded(name, type, list, version);
+        }
+        return list;
+    }
+
+    /**
+     * 分页懒加载的List，只解析访问到的那一页，适合只展示前几屏的大列表
+     * 返回的List只读，内容是读取时的快照，二进制编码保存的List会整体解析
+     *
+     * @param name
+     * @param clazz
+     * @param pageSize 每次解析的元素个数
+     * @param <T>
+     * @return
+     */
+    public <T> List<T> getPagedList(String name, Class<T> clazz, int pageSize) {
+        Object value = pendingValue(name);
+        if (value == NO_PENDING && expired(name)) {
+            return Collections.emptyList();
+        }
+        if (value == NO_PENDING && objectCodec != null) {
+            byte[] bytes = mmkv.decodeBytes(name);
+            if (objectCodec.accepts(bytes)) {
+                return getList(name, clazz);
+            }
+        }
+        String json = value != NO_PENDING ? pendingString(value, null) : mmkv.decodeString(name);
+        if (SpillStore.isPointer(json)) {
+            return getList(name, clazz);
+        }
+        List<T> list = LazyJsonList.of(json, JsonCodecs.<T>adapter(clazz), pageSize);
+        //和 getList 一样，不会返回null
+        return list != null ? list : Collections.<T>emptyList();
+    }
+
+    /**
+     * 开启解码对象缓存，getObject/getList 重复读同一个key时直接返回上次解码的对象，
+     * 通过本工具类写入或删除时失效，跨进程的写入感知不到，多进程使用的文件不要开启
+     * 缓存的对象是共享的，调用方不要修改
+     *
+     * @param maxSize 最多缓存的key数量，小于等于0时关闭
+     * @return
+     */
+    public MMKVUtils enableObjectCache(int maxSize) {
+        synchronized (this) {
+            writeVersion++;
+            decodedCache = maxSize > 0 ? new LruCache<String, Decoded>(maxSize) : null;
+        }
+        return this;
+    }
+
+    /**
+     * 替换读写对象使用的 Gson，如需要注册自定义 TypeAdapter，需要在读写前调用
+     *
+     * @param gson
+     */
+    public static void setGson(@NonNull Gson gson) {
+        JsonCodecs.setGson(gson);
+    }
+
+    private static final class Decoded {
+        final Type type;
+        final Object value;
+
+        Decoded(Type type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getDecoded(String name, Type type) {
+        LruCache<String, Decoded> cache = decodedCache;
+        if (cache == null) {
+            return null;
+        }
+        Decoded decoded = cache.get(name);
+        return decoded != null && decoded.type.equals(type) ? (T) decoded.value : null;
+    }
+
+    private synchronized long currentVersion() {
+        return writeVersion;
+    }
+
+    private void putDecoded(String name, Type type, Object value, long version) {
+        if (value == null || decodedCache == null) {
+            return;
+        }
+        synchronized (this) {
+            if (version == writeVersion && decodedCache != null) {
+                decodedCache.put(name, new Decoded(type, value));
+            }
+        }
+    }
+
+    private void invalidate(String name) {
+        if (decodedCache == null) {
+            return;
+        }
+        synchronized (this) {
+            writeVersion++;
+            if (decodedCache != null) {
+                decodedCache.remove(name);
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        if (decodedCache == null) {
+            return;
+        }
+        synchronized (this) {
+            writeVersion++;
+            if (decodedCache != null) {
+                decodedCache.evictAll();
+            }
+        }
     }
 
     /**
@@ -292,13 +672,16 @@ public class MMKVUtils {
      * @param <T>
      * @return
      */
-    private <T> T stringToBean(String jsonResult, Class<T> clz) {
-        Gson gson = new Gson();
+    private <T> T stringToBean(String jsonResult, Type clz) {
+        //没有保存过的值是空字符串
+        if (TextUtils.isEmpty(jsonResult)) {
+            return null;
+        }
         T t = null;
         try {
-            t = gson.fromJson(jsonResult, clz);
+            t = JsonCodecs.fromJson(jsonResult, clz);
         } catch (Exception e) {
-            e.printStackTrace();
+            ExtensionKt.logE("MMKVUtils json解析失败 " + e);
             return t;
         }
         return t;
@@ -315,11 +698,17 @@ public class MMKVUtils {
     private <T> List<T> stringToList(String jsonResult, Class<T> clz) {
         List<T> list = new ArrayList<>();
         try {
-            JsonParser parser = new JsonParser();
-            Gson gson = new Gson();
-            JsonArray jsonarray = parser.parse(jsonResult).getAsJsonArray();
-            for (JsonElement element : jsonarray) {
-                list.add(gson.fromJson(element, clz));
+            //直接从 JsonReader 读出元素，不先解析成 JsonArray
+            TypeAdapter<T> adapter = JsonCodecs.adapter(clz);
+            JsonReader reader = new JsonReader(new StringReader(jsonResult));
+            reader.setLenient(true);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                list.add(adapter.read(reader));
+            }
+            reader.endArray();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                list.clear();
             }
         } catch (Exception e) {
             list.clear();
@@ -336,7 +725,43 @@ public class MMKVUtils {
      * @return
      */
     public boolean containsKey(String name) {
-        return mmkv.containsKey(name);
+        Object value = pendingValue(name);
+        if (value != NO_PENDING) {
+            return value != REMOVED;
+        }
+        return !expired(name) && mmkv.containsKey(name);
+    }
+
+    /**
+     * 所有的key，包含还没写入的批量中的key
+     *
+     * @return
+     */
+    public String[] allKeys() {
+        String[] keys = mmkv.allKeys();
+        Map<String, Pending> map = pending;
+        Map<String, Long> ttl = expiries();
+        if (map.isEmpty() && ttl.isEmpty()) {
+            return keys == null ? new String[0] : keys;
+        }
+        Set<String> result = new LinkedHashSet<>();
+        if (keys != null) {
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                Long expireAt = ttl.get(key);
+                if (!TTL_MARKER.equals(key) && (expireAt == null || expireAt > now)) {
+                    result.add(key);
+                }
+            }
+        }
+        for (Map.Entry<String, Pending> entry : map.entrySet()) {
+            if (entry.getValue().value == REMOVED) {
+                result.remove(entry.getKey());
+            } else {
+                result.add(entry.getKey());
+            }
+        }
+        return result.toArray(new String[0]);
     }
 
     /**
@@ -345,7 +770,7 @@ public class MMKVUtils {
      * @param name
      */
     public void removeValueForKey(String name) {
-        mmkv.removeValueForKey(name);
+        write(name, REMOVED);
     }
 
     /**
@@ -354,14 +779,706 @@ public class MMKVUtils {
      * @param name
      */
     public void removeKeyAndValue(String name) {
-        mmkv.remove(name).apply();
+        write(name, REMOVED);
     }
 
     /**
      * 删除文件内内容
      */
     public void deleteFileContent() {
-        mmkv.clearAll();
+        synchronized (writeLock) {
+            mmkv.clearAll();
+            //还没写入的批量也一起丢弃
+            pending = Collections.emptyMap();
+            if (expiries != null && !expiries.isEmpty()) {
+                expiries.clear();
+                ttlIndex().clearAll();
+            }
+            SpillStore store = spillStore();
+            if (store != null) {
+                store.clear();
+            }
+        }
+        invalidateAll();
+        for (String name : keyListeners.keySet()) {
+            notifyChanged(name);
+        }
+    }
+
+    /**
+     * key的值变化监听，只能收到通过本工具类的写入、删除和过期，在写入的线程回调
+     */
+    public interface OnKeyChangeListener {
+        void onKeyChanged(String name);
+    }
+
+    public void addOnKeyChangeListener(String name, OnKeyChangeListener listener) {
+        synchronized (keyListeners) {
+            CopyOnWriteArrayList<OnKeyChangeListener> listeners = keyListeners.get(name);
+            if (listeners == null) {
+                listeners = new CopyOnWriteArrayList<>();
+                keyListeners.put(name, listeners);
+            }
+            listeners.addIfAbsent(listener);
+        }
+    }
+
+    public void removeOnKeyChangeListener(String name, OnKeyChangeListener listener) {
+        synchronized (keyListeners) {
+            CopyOnWriteArrayList<OnKeyChangeListener> listeners = keyListeners.get(name);
+            if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+                keyListeners.remove(name);
+            }
+        }
+    }
+
+    private void notifyChanged(String name) {
+        if (keyListeners.isEmpty()) {
+            return;
+        }
+        CopyOnWriteArrayList<OnKeyChangeListener> listeners = keyListeners.get(name);
+        if (listeners == null) {
+            return;
+        }
+        for (OnKeyChangeListener listener : listeners) {
+            listener.onKeyChanged(name);
+        }
+    }
+
+    /**
+     * 剩余有效期
+     *
+     * @param name
+     * @return 没有设置有效期时返回-1，已过期返回0
+     */
+    public long getTtl(String name) {
+        if (pendingValue(name) != NO_PENDING) {
+            return -1;
+        }
+        Long expireAt = expiries().get(name);
+        if (expireAt == null) {
+            return -1;
+        }
+        return Math.max(0, expireAt - System.currentTimeMillis());
+    }
+
+    private Map<String, Long> expiries() {
+        Map<String, Long> map = expiries;
+        if (map != null) {
+            return map;
+        }
+        synchronized (writeLock) {
+            if (expiries == null) {
+                Map<String, Long> loaded = new ConcurrentHashMap<>();
+                //没有标记时不打开索引文件
+                if (mmkv.decodeBool(TTL_MARKER, false)) {
+                    MMKV index = ttlIndex();
+                    String[] keys = index.allKeys();
+                    if (keys != null) {
+                        for (String key : keys) {
+                            loaded.put(key, index.decodeLong(key, 0L));
+                        }
+                    }
+                }
+                expiries = loaded;
+                if (!loaded.isEmpty()) {
+                    scheduleSweep(SWEEP_INTERVAL_MS);
+                }
+            }
+            return expiries;
+        }
+    }
+
+    private MMKV ttlIndex() {
+        synchronized (writeLock) {
+            if (ttlIndex == null) {
+                ttlIndex = MMKV.mmkvWithID(mmkv.mmapID() + TTL_SUFFIX, mode);
+            }
+            return ttlIndex;
+        }
+    }
+
+    /**
+     * 需要持有 writeLock
+     *
+     * @param expireAt 小于等于0时清除过期时间
+     */
+    private void setExpiry(String name, long expireAt) {
+        Map<String, Long> map = expiries();
+        if (expireAt <= 0) {
+            if (map.remove(name) != null) {
+                ttlIndex().removeValueForKey(name);
+                if (map.isEmpty()) {
+                    mmkv.removeValueForKey(TTL_MARKER);
+                }
+            }
+            return;
+        }
+        if (map.isEmpty()) {
+            mmkv.encode(TTL_MARKER, true);
+        }
+        map.put(name, expireAt);
+        ttlIndex().encode(name, expireAt);
+        scheduleSweep(SWEEP_INTERVAL_MS);
+    }
+
+    /**
+     * 已过期时删除，不解码旧值
+     */
+    private boolean expired(String name) {
+        Map<String, Long> map = expiries();
+        if (map.isEmpty()) {
+            return false;
+        }
+        Long expireAt = map.get(name);
+        if (expireAt == null || expireAt > System.currentTimeMillis()) {
+            return false;
+        }
+        expire(name, expireAt);
+        return true;
+    }
+
+    private void expire(String name, long expireAt) {
+        synchronized (writeLock) {
+            //期间重新写入过就不删
+            Long current = expiries().get(name);
+            if (current == null || current != expireAt || pending.containsKey(name)) {
+                return;
+            }
+            encode(name, REMOVED);
+            setExpiry(name, 0);
+        }
+        invalidate(name);
+        notifyChanged(name);
+    }
+
+    private void scheduleSweep(long delayMs) {
+        if (!sweepScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        WRITER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sweepScheduled.set(false);
+                sweep();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 每次最多删除 SWEEP_BATCH 个过期的key，下次在最早过期的时间清理，间隔不小于 SWEEP_INTERVAL_MS
+     */
+    private void sweep() {
+        Map<String, Long> map = expiries();
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        int count = 0;
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            long expireAt = entry.getValue();
+            if (expireAt > now) {
+                next = Math.min(next, expireAt);
+            } else if (count < SWEEP_BATCH) {
+                expire(entry.getKey(), expireAt);
+                count++;
+            } else {
+                next = now;
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            scheduleSweep(Math.max(SWEEP_INTERVAL_MS, next - now));
+        }
+    }
+
+    /**
+     * 批量写入，多个值一起生效，其他线程通过本工具类读取时要么全是旧值要么全是新值
+     * 对象在 apply 时放到后台线程序列化，apply 之后不要再修改传入的对象
+     * 进程在写入过程中被杀时，已经写进文件的部分不会回滚
+     *
+     * @return
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public final class Editor {
+        private final Map<String, Object> values = new LinkedHashMap<>();
+
+        private Editor() {
+        }
+
+        public Editor putObject(String name, Object value) {
+            values.put(name, pendingObject(value));
+            return this;
+        }
+
+        public Editor putString(String name, String value) {
+            values.put(name, value == null ? REMOVED : value);
+            return this;
+        }
+
+        public Editor putBoolean(String name, boolean value) {
+            values.put(name, value);
+            return this;
+        }
+
+        public Editor putInt(String name, int value) {
+            values.put(name, value);
+            return this;
+        }
+
+        public Editor putFloat(String name, float value) {
+            values.put(name, value);
+            return this;
+        }
+
+        public Editor putLong(String name, long value) {
+            values.put(name, value);
+            return this;
+        }
+
+        public Editor putDouble(String name, double value) {
+            values.put(name, value);
+            return this;
+        }
+
+        public Editor putBytes(String name, byte[] bytes) {
+            values.put(name, bytes == null ? REMOVED : bytes.clone());
+            return this;
+        }
+
+        public Editor remove(String name) {
+            values.put(name, REMOVED);
+            return this;
+        }
+
+        /**
+         * 立即对读取可见，序列化和写入在后台线程完成
+         */
+        public void apply() {
+            applyBatch(values, 0);
+        }
+
+        /**
+         * 在当前线程序列化并写入，返回时已经写进mmkv
+         */
+        public void commit() {
+            applyBatch(values, -1);
+        }
+    }
+
+    private static final class Pending {
+        final Object value;
+
+        Pending(Object value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * 批量写入的对象，在写入线程序列化
+     */
+    private static final class PendingObject {
+        final Object value;
+        private final ObjectCodec codec;
+        private final SpillStore spill;
+        private final int spillThreshold;
+        private volatile String json;
+        private volatile Object encoded;
+
+        PendingObject(Object value, ObjectCodec codec, SpillStore spill, int spillThreshold) {
+            this.value = value;
+            this.codec = codec;
+            this.spill = spill;
+            this.spillThreshold = spillThreshold;
+        }
+
+        /**
+         * 保存到mmkv的形式，json文本、二进制或指向单独文件的字符串
+         */
+        Object stored() {
+            Object result = encoded;
+            if (result == null) {
+                result = codec == null ? json() : encodeObject(codec, value);
+                if (spill != null) {
+                    result = spill.spillIfLarge(result, spillThreshold);
+                }
+                encoded = result;
+            }
+            return result;
+        }
+
+        String json() {
+            String result = json;
+            if (result == null) {
+                result = JsonCodecs.toJson(value);
+                json = result;
+            }
+            return result;
+        }
+    }
+
+    private Object pendingValue(String name) {
+        Map<String, Pending> map = pending;
+        if (map.isEmpty()) {
+            return NO_PENDING;
+        }
+        Pending p = map.get(name);
+        return p == null ? NO_PENDING : p.value;
+    }
+
+    private static String pendingString(Object value, String defaultValue) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof PendingObject) {
+            return ((PendingObject) value).json();
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 单个值直接写入，覆盖还没写入的批量中的同名值
+     */
+    private void write(String name, Object value) {
+        write(name, value, 0);
+    }
+
+    /**
+     * @param ttlMillis 有效期，小于等于0时不过期，同时清除原来的有效期
+     */
+    private void write(String name, Object value, long ttlMillis) {
+        synchronized (writeLock) {
+            encode(name, value);
+            setExpiry(name, value == REMOVED || ttlMillis <= 0 ? 0 : System.currentTimeMillis() + ttlMillis);
+            if (pending.containsKey(name)) {
+                Map<String, Pending> next = new HashMap<>(pending);
+                next.remove(name);
+                pending = next;
+            }
+        }
+        invalidate(name);
+        notifyChanged(name);
+    }
+
+    private void encode(String name, Object value) {
+        //只有对象会保存到单独的文件，其他类型覆盖对象留下的文件由 gcSpillFiles 清理
+        String oldPointer = value == REMOVED || value instanceof PendingObject ? spilledPointer(name) : null;
+        Object stored = value;
+        if (value == REMOVED) {
+            mmkv.removeValueForKey(name);
+        } else if (value instanceof PendingObject) {
+            stored = ((PendingObject) value).stored();
+            if (stored instanceof byte[]) {
+                mmkv.encode(name, (byte[]) stored);
+            } else {
+                mmkv.encode(name, (String) stored);
+            }
+        } else if (value instanceof String) {
+            mmkv.encode(name, (String) value);
+        } else if (value instanceof Boolean) {
+            mmkv.encode(name, (Boolean) value);
+        } else if (value instanceof Integer) {
+            mmkv.encode(name, (Integer) value);
+        } else if (value instanceof Long) {
+            mmkv.encode(name, (Long) value);
+        } else if (value instanceof Float) {
+            mmkv.encode(name, (Float) value);
+        } else if (value instanceof Double) {
+            mmkv.encode(name, (Double) value);
+        } else if (value instanceof byte[]) {
+            mmkv.encode(name, (byte[]) value);
+        }
+        //覆盖或删除后原来的文件不再需要
+        if (oldPointer != null && !oldPointer.equals(stored)) {
+            spillStore.delete(oldPointer);
+        }
+    }
+
+    /**
+     * @param delayMs 后台写入的延迟，小于0时在当前线程写入
+     */
+    private void applyBatch(Map<String, Object> values, long delayMs) {
+        if (values.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            Map<String, Pending> next = new HashMap<>(pending);
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                next.put(entry.getKey(), new Pending(entry.getValue()));
+                setExpiry(entry.getKey(), 0);
+            }
+            //一次替换，读取方同时看到这一批的所有值
+            pending = next;
+        }
+        for (String name : values.keySet()) {
+            invalidate(name);
+        }
+        for (String name : values.keySet()) {
+            notifyChanged(name);
+        }
+        if (delayMs < 0) {
+            flush();
+        } else {
+            scheduleDrain(delayMs);
+        }
+    }
+
+    private void scheduleDrain(long delayMs) {
+        DIRTY.put(this, Boolean.TRUE);
+        if (!drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        WRITER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                //先清标记，写入期间的新数据会再安排一次
+                drainScheduled.set(false);
+                flush();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 开启后 putObject 只在内存中记录最新值并立即对读取可见，序列化和写入在后台线程合并完成
+     * 应用切到后台时会自动写入，也可以调用 {@link #flush()}
+     *
+     * @param async
+     * @return
+     */
+    public MMKVUtils setAsyncWrite(boolean async) {
+        asyncWrite = async;
+        return this;
+    }
+
+    /**
+     * 在当前线程把还没写入的数据写进mmkv
+     */
+    public void flush() {
+        Map<String, Pending> snapshot = pending;
+        if (snapshot.isEmpty()) {
+            DIRTY.remove(this);
+            return;
+        }
+        //序列化不占用写锁，已经被覆盖的值不再序列化
+        for (Map.Entry<String, Pending> entry : snapshot.entrySet()) {
+            Object value = entry.getValue().value;
+            if (value instanceof PendingObject && pending.get(entry.getKey()) == entry.getValue()) {
+                try {
+                    ((PendingObject) value).stored();
+                } catch (Exception e) {
+                    ExtensionKt.logE("MMKVUtils 对象编码失败 " + e);
+                }
+            }
+        }
+        synchronized (writeLock) {
+            Map<String, Pending> next = new HashMap<>(pending);
+            for (Map.Entry<String, Pending> entry : snapshot.entrySet()) {
+                //已经被之后的写入覆盖了
+                if (next.get(entry.getKey()) != entry.getValue()) {
+                    continue;
+                }
+                try {
+                    encode(entry.getKey(), entry.getValue().value);
+                } catch (Exception e) {
+                    ExtensionKt.logE("MMKVUtils 写入 " + entry.getKey() + " 失败 " + e);
+                }
+                next.remove(entry.getKey());
+            }
+            pending = next.isEmpty() ? Collections.<String, Pending>emptyMap() : next;
+            if (next.isEmpty()) {
+                DIRTY.remove(this);
+            }
+        }
+    }
+
+    /**
+     * 写入所有实例中还没写入的数据
+     */
+    public static void flushAll() {
+        for (MMKVUtils utils : DIRTY.keySet()) {
+            utils.flush();
+        }
+    }
+
+    /**
+     * 应用切到后台时在写入线程把数据写完
+     */
+    private static final class BackgroundFlusher implements LifecycleObserver {
+        @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+        void onStop() {
+            if (DIRTY.isEmpty()) {
+                return;
+            }
+            WRITER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushAll();
+                }
+            });
+        }
+    }
+
+    /**
+     * 设置对象的二进制编码，之后 putObject 保存为二进制，getObject/getList 仍能读取原来的json文本，
+     * 读到json文本时会转存成二进制；二进制保存的值不能再用 getString 读取
+     *
+     * @param codec 为空时恢复保存json文本
+     * @return
+     */
+    public MMKVUtils setObjectCodec(ObjectCodec codec) {
+        objectCodec = codec;
+        return this;
+    }
+
+    /**
+     * 读取保存的对象，兼容二进制和json文本
+     */
+    private <T> T readObject(String name, Type type) {
+        ObjectCodec codec = objectCodec;
+        if (codec == null) {
+            String json = mmkv.decodeString(name);
+            return SpillStore.isPointer(json) ? this.<T>readSpilled(json, type) : this.<T>stringToBean(json, type);
+        }
+        byte[] bytes = mmkv.decodeBytes(name);
+        if (codec.accepts(bytes)) {
+            try {
+                return codec.decode(bytes, type);
+            } catch (Exception e) {
+                ExtensionKt.logE("MMKVUtils " + name + " 解码失败 " + e);
+                return null;
+            }
+        }
+        //不是二进制时按字符串读取，mmkv 中的字符串不是标准UTF-8，不能直接用字节转换
+        String json = mmkv.decodeString(name);
+        if (SpillStore.isPointer(json)) {
+            return readSpilled(json, type);
+        }
+        T t = stringToBean(json, type);
+        if (t != null) {
+            migrate(name, json, t, type, codec);
+        }
+        return t;
+    }
+
+    /**
+     * 原来的json文本转存成二进制
+     */
+    private void migrate(String name, String json, Object value, Type type, ObjectCodec codec) {
+        byte[] bytes;
+        try {
+            bytes = codec.encode(value, type);
+        } catch (Exception e) {
+            ExtensionKt.logE("MMKVUtils " + name + " 转存二进制失败 " + e);
+            return;
+        }
+        synchronized (writeLock) {
+            //读取之后又有写入就不转存了
+            if (pending.containsKey(name) || !json.equals(mmkv.decodeString(name))) {
+                return;
+            }
+            mmkv.encode(name, bytes);
+        }
+    }
+
+    /**
+     * 二进制编码失败时退回json文本
+     */
+    private static Object encodeObject(ObjectCodec codec, Object value) {
+        try {
+            return codec.encode(value, value == null ? Object.class : value.getClass());
+        } catch (Exception e) {
+            ExtensionKt.logE("MMKVUtils 二进制编码失败，改为保存json " + e);
+            return JsonCodecs.toJson(value);
+        }
+    }
+
+    /**
+     * 设置单独保存到文件的大小，putObject 序列化后超过这个大小（json按字符数，二进制按字节数）时
+     * mmkv 中只保存文件名，避免大值拖慢整个 mmkv 文件的加载；需要先调用 {@link #init}
+     *
+     * @param threshold 小于等于0时不再单独保存，已经保存到文件的值仍能读取
+     * @return
+     */
+    public MMKVUtils setSpillThreshold(int threshold) {
+        spillThreshold = threshold;
+        return this;
+    }
+
+    private PendingObject pendingObject(Object value) {
+        int threshold = spillThreshold;
+        return new PendingObject(value, objectCodec, threshold > 0 ? spillStore() : null, threshold);
+    }
+
+    /**
+     * 没有调用 init 时返回null
+     */
+    private SpillStore spillStore() {
+        SpillStore store = spillStore;
+        File root = spillRoot;
+        if (store == null && root != null) {
+            synchronized (this) {
+                if (spillStore == null) {
+                    spillStore = new SpillStore(new File(root, mmkv.mmapID().replaceAll("[^A-Za-z0-9._-]", "_")));
+                }
+                store = spillStore;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @return 值是指向单独文件的字符串时返回这个字符串
+     */
+    private String spilledPointer(String name) {
+        if (spillStore() == null) {
+            return null;
+        }
+        int size = mmkv.getValueSize(name);
+        if (size <= 0 || size > SpillStore.MAX_POINTER_SIZE) {
+            return null;
+        }
+        String value = mmkv.decodeString(name, null);
+        return SpillStore.isPointer(value) ? value : null;
+    }
+
+    private <T> T readSpilled(String pointer, Type type) {
+        SpillStore store = spillStore();
+        return store == null ? null : store.<T>read(pointer, type, objectCodec);
+    }
+
+    private void scheduleSpillGc() {
+        if (spillRoot == null) {
+            return;
+        }
+        WRITER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                gcSpillFiles();
+            }
+        }, SPILL_GC_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 删除没有被引用的文件，如写入后进程被杀留下的文件
+     *
+     * @return 删除的文件数
+     */
+    int gcSpillFiles() {
+        SpillStore store = spillStore();
+        if (store == null) {
+            return 0;
+        }
+        Set<String> referenced = new HashSet<>();
+        String[] keys = mmkv.allKeys();
+        if (keys != null) {
+            for (String key : keys) {
+                String pointer = spilledPointer(key);
+                if (pointer != null) {
+                    referenced.add(SpillStore.fileName(pointer));
+                }
+            }
+        }
+        return store.deleteUnreferenced(referenced, SPILL_GC_MIN_AGE_MS);
     }
 
     /**
@@ -371,8 +1488,39 @@ public class MMKVUtils {
      * @return
      */
     private String toJsonString(Object obj) {
-        Gson gson = new Gson();
-        return gson.toJson(obj);
+        return JsonCodecs.toJson(obj);
+    }
+
+    MMKV mmkv() {
+        return mmkv;
+    }
+
+    /**
+     * 写完还没写入的数据后整理文件，释放多余的空间
+     */
+    void trim() {
+        flush();
+        synchronized (writeLock) {
+            mmkv.trim();
+        }
+    }
+
+    /**
+     * 已经创建的实例
+     */
+    static List<MMKVUtils> instances() {
+        List<MMKVUtils> list = new ArrayList<>();
+        for (Holder holder : PERSIST_UTILS_MAP.values()) {
+            MMKVUtils utils = holder.utils;
+            if (utils != null) {
+                list.add(utils);
+            }
+        }
+        return list;
+    }
+
+    static void executeOnWriter(Runnable runnable, long delayMs) {
+        WRITER.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -394,18 +1542,87 @@ public class MMKVUtils {
         if (TextUtils.isEmpty(fileName)) {
             fileName = DEFAULT_FILE_NAME;
         }
-        MMKVUtils persistUtil = PERSIST_UTILS_MAP.get(fileName);
-        if (persistUtil == null) {
-            persistUtil = new MMKVUtils(fileName);
-            PERSIST_UTILS_MAP.put(fileName, persistUtil);
+        Holder holder = PERSIST_UTILS_MAP.get(fileName);
+        if (holder == null) {
+            holder = new Holder(fileName);
+            Holder existing = PERSIST_UTILS_MAP.putIfAbsent(fileName, holder);
+            if (existing != null) {
+                holder = existing;
+            }
+        }
+        return holder.get();
+    }
+
+    /**
+     * 每个文件名一个，第一次使用时创建实例，不同文件的创建互不阻塞
+     */
+    private static final class Holder {
+        private final String fileName;
+        volatile MMKVUtils utils;
+
+        Holder(String fileName) {
+            this.fileName = fileName;
+        }
+
+        MMKVUtils get() {
+            MMKVUtils result = utils;
+            if (result == null) {
+                synchronized (this) {
+                    result = utils;
+                    if (result == null) {
+                        result = new MMKVUtils(fileName);
+                        utils = result;
+                    }
+                }
+            }
+            return result;
         }
-        return persistUtil;
+    }
+
+    /**
+     * 在写入线程打开这些文件，之后 getInstance 不用再等待加载，
+     * 加载完成前在其他线程 getInstance 同一个文件会等待加载完成，不会重复创建
+     *
+     * @param fileNames 为空时表示默认文件
+     */
+    public static void preload(final String... fileNames) {
+        if (fileNames == null || fileNames.length == 0) {
+            return;
+        }
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String fileName : fileNames) {
+                    try {
+                        MMKVUtils utils = getInstance(fileName);
+                        //读一次，确保文件已经加载到内存
+                        utils.mmkv.count();
+                        utils.expiries();
+                    } catch (Exception e) {
+                        ExtensionKt.logE("MMKVUtils 预加载 " + fileName + " 失败 " + e);
+                    }
+                }
+            }
+        });
     }
 
     public static void init(Application application) {
         init(application, null);
     }
 
+    /**
+     * 初始化后在写入线程预加载 preloadFileNames 中的文件
+     *
+     * @param application
+     * @param pathName
+     * @param preloadFileNames
+     * @see #preload(String...)
+     */
+    public static void init(Application application, String pathName, String... preloadFileNames) {
+        init(application, pathName);
+        preload(preloadFileNames);
+    }
+
     /**
      * @param application Application 一般为继承了Application的实例
      * @param pathName    不需要加"/"直接传个名字就行了 为/data/user/0/包名/files/下方的目录
@@ -413,14 +1630,18 @@ public class MMKVUtils {
      */
     public static void init(Application application, String pathName) {
         MMKVLogLevel logLevel = BuildConfig.DEBUG ? MMKVLogLevel.LevelDebug : MMKVLogLevel.LevelError;
+        String rootDir;
         if (TextUtils.isEmpty(pathName)) {
-            MMKV.initialize(application.getFilesDir().getAbsolutePath() + DEFAULT_FILE_NAME, null, logLevel);
+            rootDir = application.getFilesDir().getAbsolutePath() + DEFAULT_FILE_NAME;
         } else {
             if (!pathName.startsWith("/")) {
                 pathName = new StringBuilder().append("/").append(pathName).toString();
             }
-            MMKV.initialize(application.getFilesDir().getAbsolutePath() + pathName, null, logLevel);
-
+            rootDir = application.getFilesDir().getAbsolutePath() + pathName;
         }
+        MMKV.initialize(rootDir, null, logLevel);
+        spillRoot = new File(rootDir, ".spill");
+        ProcessLifecycleOwner.get().getLifecycle().addObserver(new BackgroundFlusher());
+        MMKVMaintenance.install(application);
     }
 }
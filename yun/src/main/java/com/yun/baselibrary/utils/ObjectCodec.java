@@ -0,0 +1,29 @@
+package com.yun.baselibrary.utils;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * @Desc MMKVUtils 保存对象时使用的二进制编码，通过 {@link MMKVUtils#setObjectCodec(ObjectCodec)} 设置
+ */
+public interface ObjectCodec {
+
+    /**
+     * 是否是这个编码写入的数据，不是时按原来的json文本读取
+     *
+     * @param bytes
+     * @return
+     */
+    boolean accepts(byte[] bytes);
+
+    byte[] encode(Object value, Type type) throws IOException;
+
+    /**
+     * @param bytes
+     * @param type
+     * @param <T>
+     * @return 数据不可用（如版本不一致）时返回null
+     * @throws IOException
+     */
+    <T> T decode(byte[] bytes, Type type) throws IOException;
+}
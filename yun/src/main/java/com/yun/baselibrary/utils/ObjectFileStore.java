@@ -0,0 +1,155 @@
+package com.yun.baselibrary.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * @Desc SerializeTools 使用的文件存储
+ * 文件格式：magic(4) + 版本(1) + 数据长度(4) + crc32(8) + Java序列化数据
+ * 先写临时文件再重命名，写到一半崩溃不会损坏原来的文件；读取时校验失败的文件直接删除
+ */
+final class ObjectFileStore {
+    private static final int MAGIC = 0x59534552;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private ObjectFileStore() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 写入对象
+     *
+     * @param file
+     * @param obj
+     * @return 写入的文件大小
+     * @throws IOException
+     */
+    static long write(File file, Object obj) throws IOException {
+        byte[] data = toBytes(obj);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).putInt(data.length).putLong(crc.getValue());
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        File temp = File.createTempFile(file.getName() + "-w", TEMP_SUFFIX, dir);
+        boolean done = false;
+        try {
+            FileOutputStream fos = new FileOutputStream(temp);
+            try {
+                BufferedOutputStream out = new BufferedOutputStream(fos, 8 * 1024);
+                out.write(header.array());
+                out.write(data);
+                out.flush();
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            if (!temp.renameTo(file)) {
+                //部分文件系统目标存在时不能重命名
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("rename " + temp + " to " + file + " failed");
+                }
+            }
+            done = true;
+            return HEADER_SIZE + data.length;
+        } finally {
+            if (!done) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * 读取对象
+     *
+     * @param file
+     * @return 文件不存在或已损坏时返回null，损坏的文件会被删除
+     */
+    static Object read(File file) {
+        byte[] bytes = readFully(file);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (bytes.length >= HEADER_SIZE && buffer.getInt() == MAGIC) {
+                byte version = buffer.get();
+                int length = buffer.getInt();
+                long checksum = buffer.getLong();
+                if (version != VERSION || length != bytes.length - HEADER_SIZE) {
+                    throw new IOException("bad header");
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes, HEADER_SIZE, length);
+                if (crc.getValue() != checksum) {
+                    throw new IOException("checksum mismatch");
+                }
+                return fromBytes(bytes, HEADER_SIZE, length);
+            }
+            //没有文件头的是以前直接序列化写入的文件
+            return fromBytes(bytes, 0, bytes.length);
+        } catch (Exception e) {
+            ExtensionKt.logE("ObjectFileStore " + file + " 已损坏，删除 " + e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static byte[] readFully(File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            //反序列化需要完整的 byte[]，按文件大小一次读取，不用内存映射再复制一遍
+            byte[] bytes = new byte[(int) size];
+            raf.readFully(bytes);
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    ExtensionKt.logE("ObjectFileStore 关闭文件失败 " + e);
+                }
+            }
+        }
+    }
+
+    private static byte[] toBytes(Object obj) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(obj);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object fromBytes(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -3,31 +3,171 @@ package com.yun.baselibrary.utils
 import android.annotation.SuppressLint
 import android.content.Context
 import android.content.SharedPreferences
+import android.util.Base64
 import com.yun.baselibrary.BaseApp
 import java.io.*
+import java.lang.reflect.Type
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.reflect.KProperty
 
-class Preference<T>(val name: String, private val default: T) {
+/**
+ * @param type 对象类型的数据指定类型后用 BinaryObjectCodec 编码，不指定时用Java序列化
+ */
+class Preference<T>(val name: String, private val default: T, private val type: Type? = null) {
 
     companion object {
         private const val file_name = "epai_live"
 
+        /** 标记 SharedPreferences 中的数据已经导入 MMKV */
+        private const val MIGRATED_KEY = "__preference_migrated"
+
         private val prefs: SharedPreferences by lazy {
             BaseApp.CONTEXT.getSharedPreferences(file_name, Context.MODE_PRIVATE)
         }
 
+        private val mmkv: MMKVUtils by lazy { MMKVUtils.getInstance(file_name) }
+
+        /** MMKV 不保存值的类型，每个 key 写入时的类型记在这里，getAll 按类型读取 */
+        private val types: MMKVUtils by lazy { MMKVUtils.getInstance(file_name + "_types") }
+        private const val TYPE_LONG = "J"
+        private const val TYPE_STRING = "S"
+        private const val TYPE_INT = "I"
+        private const val TYPE_BOOLEAN = "Z"
+        private const val TYPE_FLOAT = "F"
+        private const val TYPE_OBJECT = "O"
+
+        /** SharedPreferences 中按新格式保存的对象加上这个前缀，旧格式URLEncode后不会出现 */
+        private const val BYTES_PREFIX = "~"
+
+        private val codec: ObjectCodec = BinaryObjectCodec()
+
+        /** 对象写入、删除时加1，让各个属性缓存的对象失效 */
+        private val objectVersion = AtomicInteger()
+        private val objectLock = Any()
+
+        @Volatile
+        private var useMMKV = false
+
+        @Volatile
+        private var migrated = false
+
+        /** 是否已经从 MMKV 读取过导入标记 */
+        @Volatile
+        private var migrationChecked = false
+
+        /** 导入期间的写入和导入互斥，避免旧值覆盖新写入的值 */
+        private val migrateLock = Any()
+        private val removedDuringMigration = HashSet<String>()
+        private var clearedDuringMigration = false
+
+        /**
+         * 改用 MMKV 存储，需要在 MMKVUtils.init 之后、第一次读写之前调用
+         * 文件在 MMKVUtils 的写入线程打开，第一次调用时在写入线程把原来 SharedPreferences 中的数据导入 MMKV，
+         * 导入完成前 MMKV 中没有的 key 会回退读取 SharedPreferences
+         */
+        @JvmStatic
+        fun useMMKV() {
+            useMMKV = true
+            MMKVUtils.executeOnWriter(Runnable {
+                if (!isMigrated()) {
+                    //导入失败时保持回退读取，下次启动再导入
+                    runCatching { migrate() }.onFailure { logE("Preference 导入 MMKV 失败 ${it.message}") }
+                }
+            }, 0)
+        }
+
+        /**
+         * 导入标记在写入线程读取，还没读到时第一次读写在当前线程读取
+         */
+        private fun isMigrated(): Boolean {
+            if (!migrationChecked) {
+                synchronized(migrateLock) {
+                    if (!migrationChecked) {
+                        migrated = mmkv.getBoolean(MIGRATED_KEY)
+                        migrationChecked = true
+                    }
+                }
+            }
+            return migrated
+        }
+
+        private fun migrate() {
+            val all = prefs.all
+            for ((key, value) in all) {
+                synchronized(migrateLock) {
+                    if (clearedDuringMigration || key in removedDuringMigration || mmkv.containsKey(key)) {
+                        return@synchronized
+                    }
+                    when (value) {
+                        is Long -> mmkv.putLong(key, value)
+                        //新格式的对象转回字节保存，和 setValue 写入 MMKV 的格式一致
+                        is String -> if (value.startsWith(BYTES_PREFIX)) {
+                            mmkv.putBytes(key, Base64.decode(value.substring(BYTES_PREFIX.length), Base64.NO_WRAP))
+                        } else {
+                            mmkv.putString(key, value)
+                        }
+                        is Int -> mmkv.putInt(key, value)
+                        is Boolean -> mmkv.putBoolean(key, value)
+                        is Float -> mmkv.putFloat(key, value)
+                    }
+                    recordType(key, typeOf(value))
+                }
+            }
+            synchronized(migrateLock) {
+                mmkv.putBoolean(MIGRATED_KEY, true)
+                migrated = true
+                removedDuringMigration.clear()
+            }
+        }
+
+        /**
+         * 导入完成前的写入要和导入互斥
+         */
+        private inline fun <R> mmkvWrite(block: () -> R): R {
+            if (isMigrated()) return block()
+            synchronized(migrateLock) { return block() }
+        }
+
         /**
          * 删除全部数据
          */
         fun clearPreference() {
-            prefs.edit().clear().apply()
+            if (!useMMKV) {
+                prefs.edit().clear().apply()
+                objectVersion.incrementAndGet()
+                return
+            }
+            mmkvWrite {
+                mmkv.deleteFileContent()
+                types.deleteFileContent()
+                if (!isMigrated()) {
+                    //没导入的数据也不需要了
+                    clearedDuringMigration = true
+                    prefs.edit().clear().apply()
+                }
+                mmkv.putBoolean(MIGRATED_KEY, true)
+            }
+            objectVersion.incrementAndGet()
         }
 
         /**
          * 根据key删除存储数据
          */
         fun clearPreference(key: String) {
-            prefs.edit().remove(key).apply()
+            if (!useMMKV) {
+                prefs.edit().remove(key).apply()
+                objectVersion.incrementAndGet()
+                return
+            }
+            mmkvWrite {
+                mmkv.removeValueForKey(key)
+                types.removeValueForKey(key)
+                if (!isMigrated()) {
+                    removedDuringMigration.add(key)
+                    prefs.edit().remove(key).apply()
+                }
+            }
+            objectVersion.incrementAndGet()
         }
 
         /**
@@ -37,28 +177,214 @@ class Preference<T>(val name: String, private val default: T) {
          * @return
          */
         fun contains(key: String): Boolean {
-            return prefs.contains(key)
+            if (!useMMKV) return prefs.contains(key)
+            return mmkv.containsKey(key) || (!isMigrated() && prefs.contains(key))
         }
 
         /**
          * 返回所有的键值对
+         * 使用 MMKV 时按写入时记录的类型读取，和 SharedPreferences 一样对象返回保存的字符串形式
          *
          * @param context
          * @return
          */
         fun getAll(): Map<String, *> {
-            return prefs.all
+            if (!useMMKV) return prefs.all
+            val prefsAll = prefs.all
+            val all = HashMap<String, Any?>()
+            if (!isMigrated()) all.putAll(prefsAll)
+            for (key in mmkv.allKeys()) {
+                if (key == MIGRATED_KEY) continue
+                //没有记录类型的（记录类型之前写入的）按 SharedPreferences 中原来的类型读取
+                val type = types.getString(key, "").ifEmpty { typeOf(prefsAll[key]) }
+                all[key] = readTyped(key, type) ?: all[key]
+            }
+            return all
+        }
+
+        private fun typeOf(value: Any?): String? = when (value) {
+            is Long -> TYPE_LONG
+            is String -> if (value.startsWith(BYTES_PREFIX)) TYPE_OBJECT else TYPE_STRING
+            is Int -> TYPE_INT
+            is Boolean -> TYPE_BOOLEAN
+            is Float -> TYPE_FLOAT
+            is ByteArray -> TYPE_OBJECT
+            else -> null
+        }
+
+        /**
+         * 记录 key 的类型，类型没变时不写入
+         */
+        private fun recordType(key: String, type: String?) {
+            if (type != null && types.getString(key, "") != type) types.putString(key, type)
+        }
+
+        private fun readTyped(key: String, type: String?): Any? = when (type) {
+            TYPE_LONG -> mmkv.getLong(key, 0L)
+            TYPE_STRING -> mmkv.getString(key, "")
+            TYPE_INT -> mmkv.getInt(key, 0)
+            TYPE_BOOLEAN -> mmkv.getBoolean(key, false)
+            TYPE_FLOAT -> mmkv.getFloat(key, 0f)
+            TYPE_OBJECT -> mmkv.getBytes(key)?.let { BYTES_PREFIX + Base64.encodeToString(it, Base64.NO_WRAP) }
+            else -> null
         }
     }
 
     operator fun getValue(thisRef: Any?, property: KProperty<*>): T {
+        if (!isPrimitive(default)) return getObject()
+        if (useMMKV) {
+            //导入完成前 MMKV 中没有的回退读 SharedPreferences
+            if (isMigrated() || mmkv.containsKey(name)) return getMMKV(name, default)
+        }
         return getSharedPreferences(name, default)
     }
 
     operator fun setValue(thisRef: Any?, property: KProperty<*>, value: T) {
+        if (!isPrimitive(value)) {
+            putObject(value)
+            return
+        }
+        if (useMMKV) {
+            mmkvWrite {
+                putMMKV(name, value)
+                recordType(name, typeOf(value))
+            }
+            return
+        }
         putSharedPreferences(name, value)
     }
 
+    private fun isPrimitive(value: Any?) =
+        value is Long || value is String || value is Int || value is Boolean || value is Float
+
+    /**
+     * 对象类型优先返回缓存的值，任何对象写入或删除之后缓存失效重新解码
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun getObject(): T {
+        val version = objectVersion.get()
+        val cached = cache
+        if (cached != null && cached.version == version) return cached.value as T
+        val value = readObject()
+        cache = Cached(version, value)
+        return value
+    }
+
+    private fun putObject(value: T) {
+        val bytes = encodeObject(value)
+        synchronized(objectLock) {
+            if (useMMKV) {
+                mmkvWrite {
+                    mmkv.putBytes(name, bytes)
+                    recordType(name, TYPE_OBJECT)
+                }
+            } else {
+                prefs.edit().putString(name, BYTES_PREFIX + Base64.encodeToString(bytes, Base64.NO_WRAP)).apply()
+            }
+        }
+        objectVersion.incrementAndGet()
+    }
+
+    private fun readObject(): T {
+        val fromMMKV = useMMKV && (isMigrated() || mmkv.containsKey(name))
+        if (fromMMKV) {
+            val bytes = mmkv.getBytes(name)
+            //旧数据是URLEncode后的字符串，都是ASCII字符，新数据第一个字节不是
+            if (bytes != null && bytes.isNotEmpty() && bytes[0] < 0) return decodeObject(bytes)
+            val legacy = mmkv.getString(name, "")
+            //按 SharedPreferences 新格式原样导入的值
+            if (legacy.startsWith(BYTES_PREFIX)) {
+                return decodeObject(Base64.decode(legacy.substring(BYTES_PREFIX.length), Base64.NO_WRAP))
+            }
+            return if (legacy.isEmpty()) default else upgrade(legacy, true)
+        }
+        val str = prefs.getString(name, null) ?: return default
+        if (str.startsWith(BYTES_PREFIX)) {
+            return decodeObject(Base64.decode(str.substring(BYTES_PREFIX.length), Base64.NO_WRAP))
+        }
+        return upgrade(str, false)
+    }
+
+    /**
+     * 读取旧格式的数据，并改成新格式保存
+     */
+    private fun upgrade(legacy: String, inMMKV: Boolean): T {
+        val value = try {
+            deSerialization<T>(legacy)
+        } catch (e: Exception) {
+            logE("Preference $name 解析失败 ${e.message}")
+            return default
+        }
+        val bytes = runCatching { encodeObject(value) }.getOrNull() ?: return value
+        synchronized(objectLock) {
+            //期间被重新写入过就不覆盖
+            if (inMMKV) {
+                mmkvWrite {
+                    if (mmkv.getString(name, "") == legacy) {
+                        mmkv.putBytes(name, bytes)
+                        recordType(name, TYPE_OBJECT)
+                    }
+                }
+            } else if (prefs.getString(name, null) == legacy) {
+                prefs.edit().putString(name, BYTES_PREFIX + Base64.encodeToString(bytes, Base64.NO_WRAP)).apply()
+            }
+        }
+        return value
+    }
+
+    /**
+     * 指定了类型时用 BinaryObjectCodec 编码，不需要实现 Serializable；
+     * 否则直接保存Java序列化后的字节
+     */
+    private fun encodeObject(value: T): ByteArray {
+        if (type != null) return codec.encode(value, type)
+        val byteArrayOutputStream = ByteArrayOutputStream()
+        ObjectOutputStream(byteArrayOutputStream).use { it.writeObject(value) }
+        return byteArrayOutputStream.toByteArray()
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun decodeObject(bytes: ByteArray): T {
+        return try {
+            if (codec.accepts(bytes)) {
+                if (type == null) default else codec.decode<T>(bytes, type) ?: default
+            } else {
+                ObjectInputStream(ByteArrayInputStream(bytes)).use { it.readObject() as T }
+            }
+        } catch (e: Exception) {
+            logE("Preference $name 解析失败 ${e.message}")
+            default
+        }
+    }
+
+    private class Cached(val version: Int, val value: Any?)
+
+    @Volatile
+    private var cache: Cached? = null
+
+    private fun putMMKV(name: String, value: T) {
+        when (value) {
+            is Long -> mmkv.putLong(name, value)
+            is String -> mmkv.putString(name, value)
+            is Int -> mmkv.putInt(name, value)
+            is Boolean -> mmkv.putBoolean(name, value)
+            is Float -> mmkv.putFloat(name, value)
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun getMMKV(name: String, default: T): T {
+        val res: Any? = when (default) {
+            is Long -> mmkv.getLong(name, default)
+            is String -> mmkv.getString(name, default)
+            is Int -> mmkv.getInt(name, default)
+            is Boolean -> mmkv.getBoolean(name, default)
+            is Float -> mmkv.getFloat(name, default)
+            else -> default
+        }
+        return res as T
+    }
+
     @SuppressLint("CommitPrefEdits")
     private fun putSharedPreferences(name: String, value: T) = with(prefs.edit()) {
         when (value) {
@@ -67,49 +393,25 @@ class Preference<T>(val name: String, private val default: T) {
             is Int -> putInt(name, value)
             is Boolean -> putBoolean(name, value)
             is Float -> putFloat(name, value)
-            else -> putString(name, serialize(value))
-        }.apply()
+        }
+        apply()
     }
 
     @Suppress("UNCHECKED_CAST")
     private fun getSharedPreferences(name: String, default: T): T = with(prefs) {
-        val res = when (default) {
+        val res: Any? = when (default) {
             is Long -> getLong(name, default)
             is String -> getString(name, default)
             is Int -> getInt(name, default)
             is Boolean -> getBoolean(name, default)
             is Float -> getFloat(name, default)
-            else -> {
-                val result = getString(name, serialize(default))
-                deSerialization(result!!)}
+            else -> default
         }
         return res as T
     }
 
     /**
-     * 序列化对象
-
-     * @param person
-     * *
-     * @return
-     * *
-     * @throws IOException
-     */
-    @Throws(IOException::class)
-    private fun <A> serialize(obj: A): String {
-        val byteArrayOutputStream = ByteArrayOutputStream()
-        val objectOutputStream = ObjectOutputStream(
-            byteArrayOutputStream)
-        objectOutputStream.writeObject(obj)
-        var serStr = byteArrayOutputStream.toString("ISO-8859-1")
-        serStr = java.net.URLEncoder.encode(serStr, "UTF-8")
-        objectOutputStream.close()
-        byteArrayOutputStream.close()
-        return serStr
-    }
-
-    /**
-     * 反序列化对象
+     * 反序列化旧格式保存的对象
 
      * @param str
      * *
@@ -6,39 +6,104 @@ import android.text.TextUtils;
 import com.google.gson.internal.Primitives;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 /**
  * 序列化文件,不用sp 存json 性能太差 影响其他key 的取值
  */
 public class SerializeTools {
+    private static final String DISK_CACHE_DIR = "serialize";
+
+    private static volatile DiskLruObjectCache diskCache;
 
     private SerializeTools() {
         throw new AssertionError();
     }
 
+    /**
+     * 改为使用 cacheDir 下有大小上限的LRU缓存，写入超出上限时淘汰最久没用的
+     * 之前保存在 filesDir 中的文件在第一次读取时移到缓存中，第一次写入时删除
+     *
+     * @param context
+     * @param maxSize 缓存文件的总大小上限
+     */
+    public static synchronized void useDiskCache(Context context, long maxSize) {
+        if (diskCache != null) {
+            diskCache.setMaxSize(maxSize);
+            return;
+        }
+        diskCache = new DiskLruObjectCache(new File(context.getCacheDir(), DISK_CACHE_DIR), maxSize);
+    }
+
+    /**
+     * 淘汰最久没用的缓存，直到总大小不超过 maxSize，没有开启 LRU 缓存时不做处理
+     *
+     * @param maxSize
+     */
+    public static void trimToSize(long maxSize) {
+        DiskLruObjectCache cache = diskCache;
+        if (cache != null) {
+            cache.trimToSize(maxSize);
+        }
+    }
+
+    /**
+     * LRU 缓存当前的总大小，没有开启时返回0
+     *
+     * @return
+     */
+    public static long diskCacheSize() {
+        DiskLruObjectCache cache = diskCache;
+        return cache == null ? 0 : cache.size();
+    }
+
     public static <T> T getObj(Context context, String fileName, Class<T> classOfT) {
         if (TextUtils.isEmpty(fileName) || null == classOfT) {
             return null;
         }
+        DiskLruObjectCache cache = diskCache;
         File file = new File(context.getFilesDir(), fileName);
-        Object obj;
-        if (file.exists()) {
-            obj = deserialization(file.getAbsolutePath());
-            T result = Primitives.wrap(classOfT).cast(obj);
-            if (null == result) {
-                //删除脏数据
+        Object obj = cache != null ? cache.get(fileName) : ObjectFileStore.read(file);
+        if (obj == null && cache != null) {
+            obj = migrate(cache, file, fileName);
+        }
+        if (obj == null) {
+            return null;
+        }
+        Class<T> type = Primitives.wrap(classOfT);
+        if (!type.isInstance(obj)) {
+            //删除脏数据
+            if (cache != null) {
+                cache.remove(fileName);
+            } else {
                 file.delete();
             }
-            return result;
-        } else {
             return null;
         }
+        return type.cast(obj);
+    }
+
+    /**
+     * 把开启 LRU 缓存之前保存在 filesDir 中的文件移到缓存中
+     *
+     * @return 没有旧文件时返回null
+     */
+    private static Object migrate(DiskLruObjectCache cache, File file, String fileName) {
+        if (!file.isFile()) {
+            return null;
+        }
+        Object obj = ObjectFileStore.read(file);
+        if (obj != null) {
+            try {
+                cache.put(fileName, obj);
+            } catch (IOException e) {
+                //移动失败保留旧文件，下次再试
+                ExtensionKt.logE("SerializeTools " + fileName + " 移到缓存失败 " + e);
+                return obj;
+            }
+        }
+        file.delete();
+        return obj;
     }
 
     public static boolean cacheObj(Context context, String fileNameKey, Object object) {
@@ -46,11 +111,18 @@ public class SerializeTools {
             return false;
         }
         try {
+            DiskLruObjectCache cache = diskCache;
+            if (cache != null) {
+                cache.put(fileNameKey, object);
+                //旧文件已经过时，不删的话缓存被淘汰后会读到它
+                new File(context.getFilesDir(), fileNameKey).delete();
+                return true;
+            }
             File file = new File(context.getFilesDir(), fileNameKey);
             serialization(file.getAbsolutePath(), object);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            ExtensionKt.logE("SerializeTools " + fileNameKey + " 保存失败 " + e);
             return false;
         }
 
@@ -60,54 +132,25 @@ public class SerializeTools {
      * Deserialization object from file.
      *
      * @param filePath file path
-     * @return de-serialized object
-     * @throws RuntimeException if an error occurs
+     * @return de-serialized object, null if the file does not exist or is corrupted (corrupted files are deleted)
      */
     public static Object deserialization(String filePath) {
-        ObjectInputStream in = null;
-        try {
-            in = new ObjectInputStream(new FileInputStream(filePath));
-            Object o = in.readObject();
-            in.close();
-            return o;
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("FileNotFoundException occurred. ", e);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("ClassNotFoundException occurred. ", e);
-        } catch (IOException e) {
-            throw new RuntimeException("IOException occurred. ", e);
-        } finally {
-            try {
-                in.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        return ObjectFileStore.read(new File(filePath));
     }
 
     /**
-     * Serialize object to file.
+     * Serialize object to file. The object is written to a temp file first and then renamed,
+     * so the old file is kept if the write fails.
      *
      * @param filePath file path
      * @param obj      object
      * @throws RuntimeException if an error occurs
      */
     public static void serialization(String filePath, Object obj) {
-        ObjectOutputStream out = null;
         try {
-            out = new ObjectOutputStream(new FileOutputStream(filePath));
-            out.writeObject(obj);
-            out.close();
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("FileNotFoundException occurred. ", e);
+            ObjectFileStore.write(new File(filePath), obj);
         } catch (IOException e) {
             throw new RuntimeException("IOException occurred. ", e);
-        } finally {
-            try {
-                out.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
     }
 
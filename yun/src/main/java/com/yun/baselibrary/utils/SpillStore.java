@@ -0,0 +1,212 @@
+package com.yun.baselibrary.utils;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * @Desc MMKVUtils 中超过大小的值保存到单独的文件，mmkv 中只保存一个指向文件的短字符串
+ * 指向文件的字符串格式：前缀 + 类型(j:json文本 b:二进制) + 文件名
+ */
+final class SpillStore {
+    //不能有 \u0000 等 mmkv 字符串存取时会变化的字符，json文本不会以这个前缀开头
+    private static final String POINTER_PREFIX = "mmkvutils-spill:";
+    private static final String JSON = "j:";
+    private static final String BINARY = "b:";
+    private static final String TEMP_SUFFIX = ".tmp";
+    //指向文件的字符串不会超过这个长度，超过的值不用解码判断
+    static final int MAX_POINTER_SIZE = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File dir;
+
+    SpillStore(File dir) {
+        this.dir = dir;
+    }
+
+    static boolean isPointer(String value) {
+        return value != null && value.startsWith(POINTER_PREFIX);
+    }
+
+    /**
+     * @param stored json文本或二进制
+     * @return 没有超过 threshold 时返回原值，否则写入文件后返回指向文件的字符串
+     */
+    Object spillIfLarge(Object stored, int threshold) {
+        int size = stored instanceof String ? ((String) stored).length()
+                : stored instanceof byte[] ? ((byte[]) stored).length : 0;
+        if (threshold <= 0 || size <= threshold) {
+            return stored;
+        }
+        try {
+            return write(stored);
+        } catch (IOException e) {
+            ExtensionKt.logE("SpillStore 写入文件失败 " + e);
+            return stored;
+        }
+    }
+
+    private String write(Object stored) throws IOException {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        String fileName = UUID.randomUUID().toString();
+        File temp = new File(dir, fileName + TEMP_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            if (stored instanceof byte[]) {
+                fos.write((byte[]) stored);
+            } else {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(fos, UTF_8), 16 * 1024);
+                writer.write((String) stored);
+                writer.flush();
+            }
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!temp.renameTo(new File(dir, fileName))) {
+            temp.delete();
+            throw new IOException("rename " + temp + " failed");
+        }
+        return POINTER_PREFIX + (stored instanceof byte[] ? BINARY : JSON) + fileName;
+    }
+
+    /**
+     * 读取文件中的值，json文本直接从文件流解析
+     *
+     * @return 文件不存在或解析失败时返回null
+     */
+    <T> T read(String pointer, Type type, ObjectCodec codec) {
+        File file = file(pointer);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file), 16 * 1024);
+            if (isBinary(pointer)) {
+                return codec == null ? null : codec.<T>decode(readFully(in), type);
+            }
+            JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+            reader.setLenient(true);
+            return JsonCodecs.<T>adapter(type).read(reader);
+        } catch (Exception e) {
+            ExtensionKt.logE("SpillStore 读取 " + pointer + " 失败 " + e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * 读取json文本
+     *
+     * @return 二进制或文件不存在时返回null
+     */
+    String readString(String pointer) {
+        File file = file(pointer);
+        if (file == null || isBinary(pointer)) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return new String(readFully(in), UTF_8);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    void delete(String pointer) {
+        File file = file(pointer);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    static String fileName(String pointer) {
+        return isPointer(pointer) ? pointer.substring(POINTER_PREFIX.length() + JSON.length()) : null;
+    }
+
+    /**
+     * 删除没有被引用的文件，刚写入还没保存到 mmkv 的文件通过 minAgeMs 排除
+     *
+     * @param referenced 被引用的文件名
+     * @param minAgeMs   修改时间早于这么久之前的才删除
+     * @return 删除的文件数
+     */
+    int deleteUnreferenced(Set<String> referenced, long minAgeMs) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() - minAgeMs;
+        int count = 0;
+        for (File file : files) {
+            if (!referenced.contains(file.getName()) && file.lastModified() < deadline && file.delete()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    void clear() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private static boolean isBinary(String pointer) {
+        return pointer.startsWith(BINARY, POINTER_PREFIX.length());
+    }
+
+    private File file(String pointer) {
+        String name = fileName(pointer);
+        //文件名是UUID，防止被篡改的值指向目录外
+        if (name == null || name.isEmpty() || name.indexOf('/') >= 0 || name.contains("..")) {
+            return null;
+        }
+        return new File(dir, name);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void close(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                ExtensionKt.logE("SpillStore 关闭文件失败 " + e);
+            }
+        }
+    }
+}
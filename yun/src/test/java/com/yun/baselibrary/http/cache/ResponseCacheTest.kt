@@ -0,0 +1,92 @@
+package com.yun.baselibrary.http.cache
+
+import com.yun.baselibrary.been.BaseResponse
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * ResponseCache 的磁盘层读写，MMKV 换成内存实现在本机 JVM 上运行
+ */
+class ResponseCacheTest {
+
+    data class User(val id: Int, val name: String)
+
+    private class MemoryDiskStore : ResponseCache.DiskStore {
+        val values = HashMap<String, String>()
+        val times = HashMap<String, Long>()
+
+        override fun getString(key: String): String = values[key] ?: ""
+
+        override fun getLong(key: String): Long = times[key] ?: 0L
+
+        override fun put(key: String, json: String, savedAt: Long) {
+            values[key] = json
+            times[key] = savedAt
+        }
+
+        override fun remove(key: String) {
+            values.remove(key)
+            times.remove(key)
+        }
+
+        override fun clear() {
+            values.clear()
+            times.clear()
+        }
+    }
+
+    private val store = MemoryDiskStore()
+    private lateinit var original: ResponseCache.DiskStore
+
+    @Before
+    fun setUp() {
+        original = ResponseCache.disk
+        ResponseCache.disk = store
+        ResponseCache.clearMemory()
+    }
+
+    @After
+    fun tearDown() {
+        ResponseCache.clearMemory()
+        ResponseCache.disk = original
+    }
+
+    @Test
+    fun readsBackFromDisk() {
+        val policy = cachePolicy<List<User>>("users", 60_000)
+        ResponseCache.put(policy, BaseResponse(0, "ok", listOf(User(1, "a"), User(2, "b"))))
+        assertTrue(store.values["users"]!!.isNotEmpty())
+
+        //只留磁盘上的数据
+        ResponseCache.clearMemory()
+        val entry = ResponseCache.get(policy)
+
+        assertNotNull(entry)
+        assertEquals(BaseResponse(0, "ok", listOf(User(1, "a"), User(2, "b"))), entry!!.response)
+        assertEquals(store.times["users"], entry.savedAt)
+        assertTrue(policy.isFresh(entry))
+    }
+
+    @Test
+    fun memoryOnlyWithoutType() {
+        val policy = CachePolicy("plain", 60_000)
+        ResponseCache.put(policy, BaseResponse(0, "ok", "value"))
+
+        assertTrue(store.values.isEmpty())
+        assertEquals("value", ResponseCache.get(policy)!!.response.data)
+    }
+
+    @Test
+    fun unreadableEntryIsRemoved() {
+        val policy = cachePolicy<User>("broken", 60_000)
+        store.put("broken", "{\"code\":0,\"data\":[1,2]}", 1L)
+
+        assertNull(ResponseCache.get(policy))
+        assertTrue(store.values.isEmpty())
+    }
+}
@@ -0,0 +1,246 @@
+package com.yun.baselibrary.utils;
+
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BinaryObjectCodec 的编码解码，在本机 JVM 上运行
+ */
+public class BinaryObjectCodecTest {
+
+    static class User {
+        int id;
+        long createdAt;
+        double score;
+        boolean vip;
+        String name;
+        String nickname;
+        List<String> tags;
+        Map<String, Integer> counts;
+        User friend;
+    }
+
+    static class RawJsonAdapter extends TypeAdapter<String> {
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.jsonValue(value);
+        }
+
+        @Override
+        public String read(JsonReader in) {
+            return new JsonParser().parse(in).toString();
+        }
+    }
+
+    static class Message {
+        String id;
+        @JsonAdapter(RawJsonAdapter.class)
+        String payload;
+    }
+
+    static class Pair {
+        Map<String, Integer> skipped;
+        Map<String, Integer> kept;
+    }
+
+    static class KeptOnly {
+        Map<String, Integer> kept;
+    }
+
+    private static User user(int id) {
+        User user = new User();
+        user.id = id;
+        user.createdAt = -1234567890123L;
+        user.score = 98.5;
+        user.vip = true;
+        user.name = "用户" + id;
+        user.tags = Arrays.asList("a", "b", "中文");
+        user.counts = new LinkedHashMap<>();
+        user.counts.put("likes", 42);
+        user.counts.put("posts", -7);
+        return user;
+    }
+
+    private static void assertUser(User expected, User actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.createdAt, actual.createdAt);
+        assertEquals(expected.score, actual.score, 0);
+        assertEquals(expected.vip, actual.vip);
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.nickname, actual.nickname);
+        assertEquals(expected.tags, actual.tags);
+        assertEquals(expected.counts, actual.counts);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        User user = user(1);
+        user.friend = user(2);
+
+        byte[] bytes = codec.encode(user, User.class);
+        assertTrue(codec.accepts(bytes));
+        User decoded = codec.decode(bytes, User.class);
+        assertUser(user, decoded);
+        assertUser(user.friend, decoded.friend);
+        assertNull(decoded.friend.friend);
+    }
+
+    @Test
+    public void roundTripGenericTypes() throws IOException {
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        Type type = new TypeToken<Map<String, List<Long>>>() {
+        }.getType();
+        Map<String, List<Long>> map = new LinkedHashMap<>();
+        map.put("min", Arrays.asList(Long.MIN_VALUE, 0L));
+        map.put("max", Arrays.asList(Long.MAX_VALUE, -1L));
+
+        Map<String, List<Long>> decoded = codec.decode(codec.encode(map, type), type);
+        assertEquals(map, decoded);
+    }
+
+    @Test
+    public void jsonValue() throws IOException {
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        Message message = new Message();
+        message.id = "m1";
+        message.payload = "{\"n\":1.50,\"list\":[true,null,\"x\"],\"o\":{}}";
+
+        Message decoded = codec.decode(codec.encode(message, Message.class), Message.class);
+        assertEquals("m1", decoded.id);
+        assertEquals(new JsonParser().parse(message.payload), new JsonParser().parse(decoded.payload));
+    }
+
+    @Test
+    public void deflateLargeValues() throws IOException {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            users.add(user(i));
+        }
+        Type type = new TypeToken<List<User>>() {
+        }.getType();
+        BinaryObjectCodec plain = new BinaryObjectCodec(0, -1);
+        BinaryObjectCodec compressed = new BinaryObjectCodec(0, 1024);
+
+        byte[] plainBytes = plain.encode(users, type);
+        byte[] compressedBytes = compressed.encode(users, type);
+        assertEquals(0, plainBytes[2] & 1);
+        assertEquals(1, compressedBytes[2] & 1);
+        assertTrue(compressedBytes.length < plainBytes.length);
+
+        List<User> decoded = compressed.decode(compressedBytes, type);
+        assertEquals(users.size(), decoded.size());
+        for (int i = 0; i < users.size(); i++) {
+            assertUser(users.get(i), decoded.get(i));
+        }
+        //标志位在数据里，不同压缩阈值的实例也能互相读取
+        assertEquals(users.size(), plain.<List<User>>decode(compressedBytes, type).size());
+    }
+
+    @Test
+    public void smallValuesAreNotCompressed() throws IOException {
+        byte[] bytes = new BinaryObjectCodec().encode(user(1), User.class);
+        assertEquals(0, bytes[2] & 1);
+    }
+
+    @Test
+    public void fieldNamesAreWrittenOnce() throws IOException {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            users.add(user(i));
+        }
+        Type type = new TypeToken<List<User>>() {
+        }.getType();
+        byte[] bytes = new BinaryObjectCodec(0, -1).encode(users, type);
+
+        assertEquals(1, count(bytes, "createdAt"));
+        assertEquals(1, count(bytes, "likes"));
+        List<User> decoded = new BinaryObjectCodec().decode(bytes, type);
+        assertUser(users.get(49), decoded.get(49));
+    }
+
+    @Test
+    public void skippedFieldsKeepNameReferences() throws IOException {
+        //解码的类型少了字段时，被跳过的值里第一次出现的名字也要计入序号
+        Pair pair = new Pair();
+        pair.skipped = new LinkedHashMap<>();
+        pair.skipped.put("inner", 1);
+        pair.kept = new LinkedHashMap<>();
+        pair.kept.put("inner", 2);
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        byte[] bytes = codec.encode(pair, Pair.class);
+
+        assertEquals(1, count(bytes, "inner"));
+        KeptOnly decoded = codec.decode(bytes, KeptOnly.class);
+        assertEquals(Integer.valueOf(2), decoded.kept.get("inner"));
+    }
+
+    @Test
+    public void schemaVersionMismatchReturnsNull() throws IOException {
+        byte[] bytes = new BinaryObjectCodec(1).encode(user(1), User.class);
+
+        assertNull(new BinaryObjectCodec(2).decode(bytes, User.class));
+        assertEquals(1, new BinaryObjectCodec(1).<User>decode(bytes, User.class).id);
+    }
+
+    @Test
+    public void formatVersionMismatchReturnsNull() throws IOException {
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        byte[] bytes = codec.encode(user(1), User.class);
+        bytes[1]++;
+
+        assertNull(codec.decode(bytes, User.class));
+    }
+
+    @Test
+    public void jsonTextIsNotAccepted() {
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        byte[] json = "{\"id\":1}".getBytes(Charset.forName("UTF-8"));
+
+        assertFalse(codec.accepts(json));
+        assertFalse(codec.accepts(new byte[0]));
+        assertFalse(codec.accepts(null));
+    }
+
+    @Test
+    public void encodingIsStable() throws IOException {
+        BinaryObjectCodec codec = new BinaryObjectCodec();
+        assertArrayEquals(codec.encode(user(1), User.class), codec.encode(user(1), User.class));
+    }
+
+    private static int count(byte[] bytes, String text) {
+        byte[] target = text.getBytes(Charset.forName("UTF-8"));
+        int count = 0;
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            int j = 0;
+            while (j < target.length && bytes[i + j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                count++;
+            }
+        }
+        return count;
+    }
+}